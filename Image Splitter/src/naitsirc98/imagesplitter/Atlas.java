@@ -0,0 +1,123 @@
+package naitsirc98.imagesplitter;
+
+/**
+ * The result of packing subimages with an {@link AtlasPacker}: one or more pages of pixels and a table that tells where
+ * each subimage was placed.
+ *
+ * <p>Pages are {@code int} arrays in the same ARGB format as the original image, and their width and height are powers of
+ * two. Subimages are identified by the index they had in the packed list. For each one, the table keeps the page, the
+ * position in the page, the size, whether it was rotated or not and the area of the original image it was copied from.
+ * That area may be smaller than the original {@link ImageBounds} if the subimages were trimmed.</p>
+ *
+ * <p>A rotated subimage is turned 90 degrees clockwise, so it takes {@code height} columns and {@code width} rows of its
+ * page. The pixel at (u, v) of the source area is at (x + height - 1 - v, y + u) of the page.</p>
+ *
+ * */
+public final class Atlas {
+
+	static final int PAGE = 0, X = 1, Y = 2, WIDTH = 3, HEIGHT = 4, ROTATED = 5, SOURCE_X = 6, SOURCE_Y = 7, FIELDS = 8;
+
+	private final int[][] pages;
+	private final int[] pageWidths;
+	private final int[] pageHeights;
+	private final int[] table;
+
+	Atlas(int[][] pages, int[] pageWidths, int[] pageHeights, int[] table) {
+		this.pages = pages;
+		this.pageWidths = pageWidths;
+		this.pageHeights = pageHeights;
+		this.table = table;
+	}
+
+	public int getPageCount() {
+		return pages.length;
+	}
+
+	/**
+	 * Returns the pixels of a page. The array is not copied.
+	 *
+	 * @param page the index of the page
+	 *
+	 * @return the pixels of the page
+	 *
+	 * */
+	public int[] getPage(int page) {
+		return pages[page];
+	}
+
+	public int getPageWidth(int page) {
+		return pageWidths[page];
+	}
+
+	public int getPageHeight(int page) {
+		return pageHeights[page];
+	}
+
+	/**
+	 * @return the number of subimages in the table
+	 * */
+	public int size() {
+		return table.length / FIELDS;
+	}
+
+	/**
+	 * Returns the page a subimage was placed in.
+	 *
+	 * @param sprite the index of the subimage
+	 *
+	 * @return the page of the subimage, or -1 if it was empty after trimming and so it was not placed
+	 *
+	 * */
+	public int getPageOf(int sprite) {
+		return table[sprite*FIELDS+PAGE];
+	}
+
+	public int getX(int sprite) {
+		return table[sprite*FIELDS+X];
+	}
+
+	public int getY(int sprite) {
+		return table[sprite*FIELDS+Y];
+	}
+
+	/**
+	 * @param sprite the index of the subimage
+	 *
+	 * @return the width of the subimage, before rotating it
+	 * */
+	public int getWidth(int sprite) {
+		return table[sprite*FIELDS+WIDTH];
+	}
+
+	/**
+	 * @param sprite the index of the subimage
+	 *
+	 * @return the height of the subimage, before rotating it
+	 * */
+	public int getHeight(int sprite) {
+		return table[sprite*FIELDS+HEIGHT];
+	}
+
+	public boolean isRotated(int sprite) {
+		return table[sprite*FIELDS+ROTATED] != 0;
+	}
+
+	/**
+	 * @param sprite the index of the subimage
+	 *
+	 * @return the x coordinate, in the original image, of the area that was copied
+	 * */
+	public int getSourceX(int sprite) {
+		return table[sprite*FIELDS+SOURCE_X];
+	}
+
+	/**
+	 * @param sprite the index of the subimage
+	 *
+	 * @return the y coordinate, in the original image, of the area that was copied
+	 * */
+	public int getSourceY(int sprite) {
+		return table[sprite*FIELDS+SOURCE_Y];
+	}
+
+}
@@ -0,0 +1,444 @@
+package naitsirc98.imagesplitter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import naitsirc98.imagesplitter.ImageSplitter.BackgroundType;
+
+/**
+ * Objects of this class pack the subimages of a {@link SplittedImageList} into one or more compact pages, so the
+ * empty space of the original image does not have to be kept in memory.
+ *
+ * <p>Subimages are placed from the biggest to the smallest with a skyline bottom-left heuristic: each page keeps the
+ * top edge of what has been placed so far, and every subimage goes where it ends lowest. When a subimage does not fit in
+ * any page, a new one is started. Pages are finally cropped to the smallest power of two that holds them.</p>
+ *
+ * <p>You may set:</p>
+ *
+ * <ul>
+ *
+ * <li>{@code padding}: the number of empty pixels between subimages. 0 by default.</li>
+ * <li>{@code rotation}: whether subimages may be rotated 90 degrees or not to fit better. Disabled by default.</li>
+ * <li>{@code maxPageSize}: the maximum width and height of a page, a power of two. 2048 by default.</li>
+ * <li>{@code trim}: a {@link BackgroundType} used to remove the background rows and columns around each subimage before
+ * packing it. Null by default, so subimages are packed as they are.</li>
+ *
+ * </ul>
+ *
+ * <p>See {@link Atlas} for the result.</p>
+ *
+ * */
+public class AtlasPacker {
+
+	private int padding;
+	private boolean rotation;
+	private int maxPageSize = 2048;
+	private BackgroundType trim;
+
+	/**
+	 * Default constructor.
+	 * */
+	public AtlasPacker() {
+
+	}
+
+	/**
+	 * Packs the given subimages.
+	 *
+	 * @param sprites the subimages to pack
+	 * @param image the original image
+	 * @param width the width of the original image
+	 *
+	 * @return the packed pages and where each subimage was placed
+	 *
+	 * */
+	public Atlas pack(List<ImageBounds> sprites, int[] image, int width) {
+
+		if(image == null) {
+			throw new NullPointerException("The image array cannot be null!");
+		}
+
+		final int count = sprites.size();
+
+		if(count > 0x7FFFFF) {
+			throw new IllegalArgumentException("Too many subimages: " + count);
+		}
+
+		final int[] table = new int[count * Atlas.FIELDS];
+		final long[] order = new long[count];
+
+		for(int i = 0;i < count;i++) {
+
+			final ImageBounds b = sprites.get(i);
+			final int t = i * Atlas.FIELDS;
+
+			if(b.x < 0 || b.y < 0 || b.width < 0 || b.height < 0 || b.x + b.width > width
+					|| (long) (b.y + b.height) * width > image.length) {
+				throw new IndexOutOfBoundsException("Subimage out of the image: " + b);
+			}
+
+			table[t+Atlas.SOURCE_X] = b.x;
+			table[t+Atlas.SOURCE_Y] = b.y;
+			table[t+Atlas.WIDTH] = b.width;
+			table[t+Atlas.HEIGHT] = b.height;
+
+			if(trim != null) {
+				trim(table, t, image, width);
+			}
+
+			final int w = table[t+Atlas.WIDTH];
+			final int h = table[t+Atlas.HEIGHT];
+
+			if(w > 0 && h > 0 && !(w <= maxPageSize && h <= maxPageSize)) {
+				throw new IllegalArgumentException("Subimage does not fit in a page of " + maxPageSize + ": " + b);
+			}
+
+			// De mayor a menor lado, despues de mayor a menor area, y despues por indice
+			final long side = Math.max(w, h);
+			final long area = Math.min((long) w * h, 0xFFFFFFL);
+
+			order[i] = (0xFFFFL - side) << 47 | (0xFFFFFFL - area) << 23 | i;
+		}
+
+		Arrays.sort(order);
+
+		List<Page> pages = new ArrayList<>();
+
+		for(int k = 0;k < count;k++) {
+
+			final int i = (int) (order[k] & 0x7FFFFF);
+			final int t = i * Atlas.FIELDS;
+
+			final int w = table[t+Atlas.WIDTH];
+			final int h = table[t+Atlas.HEIGHT];
+
+			if(w <= 0 || h <= 0) {
+				table[t+Atlas.PAGE] = -1;
+				continue;
+			}
+
+			boolean placed = false;
+
+			for(int p = 0;p < pages.size() && !placed;p++) {
+				placed = pages.get(p).place(table, t, p, w, h, rotation, padding);
+			}
+
+			if(!placed) {
+				Page page = new Page(maxPageSize);
+				pages.add(page);
+				page.place(table, t, pages.size() - 1, w, h, rotation, padding);
+			}
+
+		}
+
+		final int[][] pixels = new int[pages.size()][];
+		final int[] widths = new int[pages.size()];
+		final int[] heights = new int[pages.size()];
+
+		for(int p = 0;p < pages.size();p++) {
+			widths[p] = powerOfTwo(pages.get(p).usedWidth);
+			heights[p] = powerOfTwo(pages.get(p).usedHeight);
+			pixels[p] = new int[widths[p] * heights[p]];
+		}
+
+		for(int i = 0;i < count;i++) {
+
+			final int t = i * Atlas.FIELDS;
+			final int p = table[t+Atlas.PAGE];
+
+			if(p >= 0) {
+				copy(table, t, image, width, pixels[p], widths[p]);
+			}
+
+		}
+
+		return new Atlas(pixels, widths, heights, table);
+	}
+
+	private void trim(int[] table, int t, int[] image, int width) {
+
+		int x0 = table[t+Atlas.SOURCE_X];
+		int y0 = table[t+Atlas.SOURCE_Y];
+		int x1 = x0 + table[t+Atlas.WIDTH];
+		int y1 = y0 + table[t+Atlas.HEIGHT];
+
+		while(y0 < y1 && isBackground(image, width, x0, x1, y0, y0+1)) {
+			y0++;
+		}
+
+		while(y1 > y0 && isBackground(image, width, x0, x1, y1-1, y1)) {
+			y1--;
+		}
+
+		while(x0 < x1 && isBackground(image, width, x0, x0+1, y0, y1)) {
+			x0++;
+		}
+
+		while(x1 > x0 && isBackground(image, width, x1-1, x1, y0, y1)) {
+			x1--;
+		}
+
+		table[t+Atlas.SOURCE_X] = x0;
+		table[t+Atlas.SOURCE_Y] = y0;
+		table[t+Atlas.WIDTH] = x1 - x0;
+		table[t+Atlas.HEIGHT] = y1 - y0;
+	}
+
+	private boolean isBackground(int[] image, int width, int x0, int x1, int y0, int y1) {
+
+		for(int y = y0;y < y1;y++) {
+			for(int x = x0;x < x1;x++) {
+				if(!trim.contains(image[x + y*width])) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private static void copy(int[] table, int t, int[] image, int width, int[] page, int pageWidth) {
+
+		final int sx = table[t+Atlas.SOURCE_X];
+		final int sy = table[t+Atlas.SOURCE_Y];
+		final int w = table[t+Atlas.WIDTH];
+		final int h = table[t+Atlas.HEIGHT];
+		final int dx = table[t+Atlas.X];
+		final int dy = table[t+Atlas.Y];
+
+		if(table[t+Atlas.ROTATED] == 0) {
+
+			for(int v = 0;v < h;v++) {
+				System.arraycopy(image, sx + (sy+v)*width, page, dx + (dy+v)*pageWidth, w);
+			}
+
+		} else {
+
+			// Girado 90 grados en sentido horario: (u, v) -> (h - 1 - v, u)
+			for(int v = 0;v < h;v++) {
+
+				final int src = sx + (sy+v)*width;
+				final int dst = dx + h - 1 - v + dy*pageWidth;
+
+				for(int u = 0;u < w;u++) {
+					page[dst + u*pageWidth] = image[src + u];
+				}
+
+			}
+
+		}
+
+	}
+
+	private static int powerOfTwo(int value) {
+		return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+	}
+
+	public int getPadding() {
+		return padding;
+	}
+
+	public void setPadding(int padding) {
+
+		if(padding < 0) {
+			throw new IllegalArgumentException("Padding is < 0");
+		}
+
+		this.padding = padding;
+	}
+
+	public boolean isRotation() {
+		return rotation;
+	}
+
+	public void setRotation(boolean rotation) {
+		this.rotation = rotation;
+	}
+
+	public int getMaxPageSize() {
+		return maxPageSize;
+	}
+
+	public void setMaxPageSize(int maxPageSize) {
+
+		if(maxPageSize <= 0 || maxPageSize > 1 << 15 || Integer.bitCount(maxPageSize) != 1) {
+			throw new IllegalArgumentException("Max page size must be a power of two up to 32768");
+		}
+
+		this.maxPageSize = maxPageSize;
+	}
+
+	public BackgroundType getTrim() {
+		return trim;
+	}
+
+	public void setTrim(BackgroundType trim) {
+		this.trim = trim;
+	}
+
+	/**
+	 * A page being packed. The skyline is a list of segments sorted by x that covers the whole width of the page,
+	 * each one with the height of what has been placed below it.
+	 * */
+	private static final class Page {
+
+		final int size;
+
+		int[] nodeX = new int[16];
+		int[] nodeY = new int[16];
+		int[] nodeWidth = new int[16];
+		int nodes;
+
+		int usedWidth;
+		int usedHeight;
+
+		Page(int size) {
+			this.size = size;
+			nodeWidth[0] = size;
+			nodes = 1;
+		}
+
+		boolean place(int[] table, int t, int page, int w, int h, boolean rotation, int padding) {
+
+			long best = position(w, h, padding);
+			boolean rotated = false;
+
+			if(rotation && w != h) {
+
+				final long other = position(h, w, padding);
+
+				if(other < best) {
+					best = other;
+					rotated = true;
+				}
+
+			}
+
+			if(best == Long.MAX_VALUE) {
+				return false;
+			}
+
+			final int node = (int) (best & 0xFFFF);
+			final int pw = rotated ? h : w;
+			final int ph = rotated ? w : h;
+
+			final int x = nodeX[node];
+			final int width = Math.min(pw + padding, size - x);
+			final int y = top(node, width);
+
+			add(node, x, y + ph + padding, width);
+
+			usedWidth = Math.max(usedWidth, x + pw);
+			usedHeight = Math.max(usedHeight, y + ph);
+
+			table[t+Atlas.PAGE] = page;
+			table[t+Atlas.X] = x;
+			table[t+Atlas.Y] = y;
+			table[t+Atlas.ROTATED] = rotated ? 1 : 0;
+
+			return true;
+		}
+
+		/**
+		 * Finds where a rectangle ends lowest, and then most to the left. The padding at its right must be above the
+		 * skyline too, or the node added for it would hide higher nodes.
+		 *
+		 * @return the bottom of the rectangle and the index of the node where it starts, or Long.MAX_VALUE if it does not fit
+		 * */
+		private long position(int w, int h, int padding) {
+
+			long best = Long.MAX_VALUE;
+
+			for(int i = 0;i < nodes && nodeX[i] + w <= size;i++) {
+
+				final int y = top(i, Math.min(w + padding, size - nodeX[i]));
+
+				if(y + h <= size) {
+					// Los nodos estan ordenados por x, asi que el indice desempata por x
+					best = Math.min(best, (long) (y + h) << 16 | i);
+				}
+
+			}
+
+			return best;
+		}
+
+		private int top(int node, int w) {
+
+			int y = 0;
+
+			for(int j = node, covered = 0;covered < w;j++) {
+				y = Math.max(y, nodeY[j]);
+				covered += nodeWidth[j];
+			}
+
+			return y;
+		}
+
+		private void add(int node, int x, int y, int w) {
+
+			final int end = x + w;
+
+			// Quita o recorta los nodos que quedan debajo del nuevo
+			int next = node;
+
+			while(next < nodes && nodeX[next] + nodeWidth[next] <= end) {
+				next++;
+			}
+
+			if(next < nodes && nodeX[next] < end) {
+				nodeWidth[next] -= end - nodeX[next];
+				nodeX[next] = end;
+			}
+
+			final int removed = next - node;
+
+			if(removed == 0) {
+				grow();
+				shift(node, node + 1);
+			} else if(removed > 1) {
+				shift(next, node + 1);
+			}
+
+			nodeX[node] = x;
+			nodeY[node] = y;
+			nodeWidth[node] = w;
+
+			// Une los vecinos a la misma altura
+			if(node + 1 < nodes && nodeY[node+1] == y) {
+				nodeWidth[node] += nodeWidth[node+1];
+				shift(node + 2, node + 1);
+			}
+
+			if(node > 0 && nodeY[node-1] == y) {
+				nodeWidth[node-1] += nodeWidth[node];
+				shift(node + 1, node);
+			}
+
+		}
+
+		private void shift(int from, int to) {
+
+			final int n = nodes - from;
+
+			System.arraycopy(nodeX, from, nodeX, to, n);
+			System.arraycopy(nodeY, from, nodeY, to, n);
+			System.arraycopy(nodeWidth, from, nodeWidth, to, n);
+
+			nodes += to - from;
+		}
+
+		private void grow() {
+
+			if(nodes == nodeX.length) {
+				nodeX = Arrays.copyOf(nodeX, nodes * 2);
+				nodeY = Arrays.copyOf(nodeY, nodes * 2);
+				nodeWidth = Arrays.copyOf(nodeWidth, nodes * 2);
+			}
+
+		}
+
+	}
+
+}
@@ -0,0 +1,84 @@
+package naitsirc98.imagesplitter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@code CancellationToken} tells a long running split that it should stop. It is cancelled when {@link #cancel()} is
+ * called, when its deadline, if any, is reached, or when the thread that is splitting is interrupted.
+ *
+ * <p>The split checks the token once per row of the image and once per row of the result while sorting it. When it is
+ * cancelled, the split returns the subimages found so far, and {@link SplittedImageList#isComplete()} returns false.</p>
+ *
+ * <p>Tokens are thread safe: usually one thread splits and another one cancels.</p>
+ *
+ * */
+public final class CancellationToken {
+
+	/**
+	 * Creates a token that is cancelled after the given amount of time, starting now.
+	 *
+	 * @param timeout the maximum time
+	 * @param unit the time unit of the timeout
+	 *
+	 * @return the new token
+	 *
+	 * */
+	public static CancellationToken withTimeout(long timeout, TimeUnit unit) {
+		return withDeadline(System.nanoTime() + unit.toNanos(timeout));
+	}
+
+	/**
+	 * Creates a token that is cancelled when {@link System#nanoTime()} reaches the given value.
+	 *
+	 * @param deadline the deadline, in {@link System#nanoTime()} units
+	 *
+	 * @return the new token
+	 *
+	 * */
+	public static CancellationToken withDeadline(long deadline) {
+		return new CancellationToken(true, deadline);
+	}
+
+	private final boolean hasDeadline;
+	private final long deadline;
+	private volatile boolean cancelled;
+
+	/**
+	 * Constructs a token without deadline, which is only cancelled by {@link #cancel()} or by an interruption.
+	 * */
+	public CancellationToken() {
+		this(false, 0);
+	}
+
+	private CancellationToken(boolean hasDeadline, long deadline) {
+		this.hasDeadline = hasDeadline;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Cancels this token.
+	 * */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Checks whether this token is cancelled or not. The interrupted status of the current thread is not cleared.
+	 *
+	 * @return true if cancelled, the deadline has been reached or the current thread is interrupted, false otherwise
+	 *
+	 * */
+	public boolean isCancelled() {
+
+		if(cancelled) {
+			return true;
+		}
+
+		if((hasDeadline && System.nanoTime() - deadline >= 0) || Thread.currentThread().isInterrupted()) {
+			cancelled = true;
+		}
+
+		return cancelled;
+	}
+
+}
@@ -0,0 +1,710 @@
+package naitsirc98.imagesplitter;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import naitsirc98.imagesplitter.ImageSplitter.BackgroundType;
+
+/**
+ * Finds the 4-connected or 8-connected components of an image, one row at a time.
+ *
+ * <p>Each row is reduced to runs of consecutive non background pixels. A run that touches runs of the previous row takes
+ * their label, joining them in a union-find if it touches more than one. With 8-connectivity, runs that only touch at a
+ * corner are joined too. A component is finished as soon as a row has no
+ * runs connected to it, so only the labels of two rows are alive at any time and they are recycled afterwards. The image
+ * is only read, never modified.</p>
+ *
+ * <p>Each component reserves a slot when its first run is found, so once {@code end} is called the results are in the
+ * same order as a top to bottom, left to right scan would find them. Results are inclusive bounds (first and last pixel
+ * of each axis).</p>
+ *
+ * <p>Optionally, every run is recorded as a span together with the slot of its label. Slots that are joined are linked
+ * in a second union-find, so once labeling ends each span can be traced to its component with {@code spanComponent}.</p>
+ *
+ * <p>Components separated by small gaps may be joined by a dilation of the rows. The non background pixels of each row
+ * are packed into 64 bit words, the last {@code gap + 1} rows are combined with an {@code or}, and the result is
+ * stretched {@code gap} pixels to the right by shifting whole words. Runs are taken from that dilated row, so parts
+ * that are at most {@code gap} pixels away horizontally and vertically end up in the same run or in runs that touch.
+ * The bounds and spans of each component are still taken from the runs of the original pixels inside its dilated
+ * runs.</p>
+ *
+ * <p>Optionally, the statistics of the pixels of each component are accumulated too: the number of pixels, the sum of
+ * their coordinates and the sum of each channel of their colors. They are kept in {@code STATS} consecutive longs per
+ * label and per slot, and added up when labels are joined, so the image is still read only once.</p>
+ *
+ * <p>Buffers grow as needed and are reused between calls, so instances of this class must not be shared between threads.</p>
+ *
+ * */
+final class ComponentLabeler {
+
+	/**
+	 * The number of statistics of a component, and the position of each one.
+	 * */
+	static final int STATS = 7, PIXELS = 0, SUM_X = 1, SUM_Y = 2, SUM_A = 3, SUM_R = 4, SUM_G = 5, SUM_B = 6;
+
+	private BackgroundType background;
+	private int width;
+	private boolean recordSpans;
+	private int reach;
+	private int gap;
+	private boolean statistics;
+
+	// La fila que se esta etiquetando, para leer los colores de sus pixeles
+	private int[] rowPixels;
+	private int rowOffset;
+
+	// Runs de la fila anterior y de la actual
+	private int[] prevStart = new int[0];
+	private int[] prevEnd = new int[0];
+	private int[] prevLabel = new int[0];
+	private int prevCount;
+	private int prevIndex;
+
+	private int[] curStart = new int[0];
+	private int[] curEnd = new int[0];
+	private int[] curLabel = new int[0];
+	private int curCount;
+
+	// Runs de pixeles originales de la fila actual, solo cuando se unen huecos
+	private int[] rowStart = new int[0];
+	private int[] rowEnd = new int[0];
+
+	// Las ultimas gap + 1 filas empaquetadas en bits, y su dilatacion
+	private long[] window = new long[0];
+	private long[] dilated = new long[0];
+	private int words;
+
+	// Etiquetas vivas, se reciclan cuando dejan de usarse
+	private int[] parent = new int[0];
+	private int[] labelMinX = new int[0];
+	private int[] labelMinY = new int[0];
+	private int[] labelMaxX = new int[0];
+	private int[] labelMaxY = new int[0];
+	private int[] labelSlot = new int[0];
+	private int[] labelSeen = new int[0];
+	private long[] labelStats = new long[0];
+	private int labelCount;
+
+	private int[] free = new int[0];
+	private int freeCount;
+
+	private int[] pending = new int[0];
+	private int pendingCount;
+
+	// Componentes terminados, indexados por su slot
+	int[] minX = new int[0];
+	int[] minY = new int[0];
+	int[] maxX = new int[0];
+	int[] maxY = new int[0];
+	private boolean[] used = new boolean[0];
+	private int[] slotParent = new int[0];
+	long[] stats = new long[0];
+	private int slots;
+
+	// Spans de todos los runs, en orden de la imagen
+	int[] spanY = new int[0];
+	int[] spanStart = new int[0];
+	int[] spanEnd = new int[0];
+	private int[] spanSlot = new int[0];
+	int spanCount;
+
+	/**
+	 * The number of components found, valid after {@code end} is called.
+	 * */
+	int count;
+
+	/**
+	 * The number of components finished so far.
+	 * */
+	int finished;
+
+	/**
+	 * Called with the slot of each component as soon as it is finished, or null. Its bounds are already in the slot.
+	 * */
+	IntConsumer onFinish;
+
+	/**
+	 * Prepares this labeler for a new image.
+	 *
+	 * @param width the width of the rows
+	 * @param background the background type
+	 * @param connectivity 4 or 8
+	 * @param gap the maximum gap, in pixels, between parts of the same component
+	 * @param recordSpans whether to record the spans of the components or not
+	 * @param statistics whether to accumulate the statistics of the components or not
+	 *
+	 * */
+	void begin(int width, BackgroundType background, int connectivity, int gap, boolean recordSpans, boolean statistics) {
+
+		this.width = width;
+		this.background = background;
+		this.reach = connectivity == 8 ? 1 : 0;
+		this.gap = gap;
+		this.recordSpans = recordSpans;
+		this.statistics = statistics;
+
+		// Los buffers de estadisticas solo existen si alguna vez se piden
+		if(statistics) {
+			labelStats = Arrays.copyOf(labelStats, Math.max(labelStats.length, parent.length * STATS));
+			stats = Arrays.copyOf(stats, Math.max(stats.length, used.length * STATS));
+		}
+
+		final int runs = width / 2 + 1;
+
+		if(curStart.length < runs) {
+			prevStart = new int[runs];
+			prevEnd = new int[runs];
+			prevLabel = new int[runs];
+			curStart = new int[runs];
+			curEnd = new int[runs];
+			curLabel = new int[runs];
+		}
+
+		if(gap > 0) {
+
+			words = (width + 63) >>> 6;
+
+			final long bits = (long) (gap + 1) * words;
+
+			if(bits > Integer.MAX_VALUE - 8) {
+				throw new IllegalArgumentException("Gap too big for an image of width " + width + ": " + gap);
+			}
+
+			if(rowStart.length < runs) {
+				rowStart = new int[runs];
+				rowEnd = new int[runs];
+			}
+
+			if(window.length < bits) {
+				window = new long[(int) bits];
+			}
+
+			if(dilated.length < words) {
+				dilated = new long[words];
+			}
+
+			Arrays.fill(window, 0, (int) bits, 0L);
+		}
+
+		prevCount = 0;
+		curCount = 0;
+		labelCount = 0;
+		freeCount = 0;
+		pendingCount = 0;
+		slots = 0;
+		spanCount = 0;
+		count = 0;
+		finished = 0;
+	}
+
+	/**
+	 * Labels the next row of the image.
+	 *
+	 * @param pixels the image array
+	 * @param offset the index of the first pixel of the row
+	 * @param y the row
+	 *
+	 * */
+	void row(int[] pixels, int offset, int y) {
+
+		prevIndex = 0;
+		curCount = 0;
+
+		rowPixels = pixels;
+		rowOffset = offset;
+
+		if(gap > 0) {
+			bridgedRow(pixels, offset, y);
+			return;
+		}
+
+		int x = 0;
+
+		while(x < width) {
+
+			if(background.contains(pixels[offset + x])) {
+				x++;
+				continue;
+			}
+
+			final int start = x;
+
+			do {
+				x++;
+			} while(x < width && !background.contains(pixels[offset + x]));
+
+			include(link(start, x, y), start, x, y);
+
+		}
+
+		endRow(y);
+	}
+
+	private void bridgedRow(int[] pixels, int offset, int y) {
+
+		int runs = 0;
+		int x = 0;
+
+		while(x < width) {
+
+			if(background.contains(pixels[offset + x])) {
+				x++;
+				continue;
+			}
+
+			rowStart[runs] = x;
+
+			do {
+				x++;
+			} while(x < width && !background.contains(pixels[offset + x]));
+
+			rowEnd[runs++] = x;
+		}
+
+		// La fila actual sustituye en la ventana a la de hace gap + 1 filas
+		final int base = (y % (gap + 1)) * words;
+
+		Arrays.fill(window, base, base + words, 0L);
+
+		for(int r = 0;r < runs;r++) {
+			setBits(window, base, rowStart[r], rowEnd[r]);
+		}
+
+		System.arraycopy(window, 0, dilated, 0, words);
+
+		for(int w = 1;w <= gap;w++) {
+			for(int i = 0;i < words;i++) {
+				dilated[i] |= window[w * words + i];
+			}
+		}
+
+		// Cada paso duplica el desplazamiento, asi que bastan log(gap) pasadas
+		for(int covered = 1;covered <= gap;) {
+			final int shift = Math.min(covered, gap + 1 - covered);
+			shiftOr(dilated, words, shift);
+			covered += shift;
+		}
+
+		int r = 0;
+
+		x = nextBit(dilated, 0, true);
+
+		while(x < width) {
+
+			final int end = nextBit(dilated, x, false);
+			final int label = link(x, end, y);
+
+			for(;r < runs && rowStart[r] < end;r++) {
+				include(label, rowStart[r], rowEnd[r], y);
+			}
+
+			x = nextBit(dilated, end, true);
+		}
+
+		endRow(y);
+	}
+
+	private static void setBits(long[] bits, int base, int start, int end) {
+
+		final int first = start >>> 6;
+		final int last = (end - 1) >>> 6;
+
+		final long firstMask = -1L << start;
+		final long lastMask = -1L >>> -end;
+
+		if(first == last) {
+			bits[base + first] |= firstMask & lastMask;
+			return;
+		}
+
+		bits[base + first] |= firstMask;
+
+		for(int i = first + 1;i < last;i++) {
+			bits[base + i] = -1L;
+		}
+
+		bits[base + last] |= lastMask;
+	}
+
+	/**
+	 * Moves every set bit {@code shift} positions to the right of the image, keeping the original ones.
+	 * */
+	private static void shiftOr(long[] bits, int words, int shift) {
+
+		final int wordShift = shift >>> 6;
+		final int bitShift = shift & 63;
+
+		// De la ultima palabra a la primera, para leer siempre palabras aun sin modificar
+		for(int i = words - 1;i >= wordShift;i--) {
+
+			long value = bits[i - wordShift] << bitShift;
+
+			if(bitShift != 0 && i - wordShift > 0) {
+				value |= bits[i - wordShift - 1] >>> (64 - bitShift);
+			}
+
+			bits[i] |= value;
+		}
+
+	}
+
+	/**
+	 * Finds the next set, or clear, bit of the dilated row.
+	 *
+	 * @return its position, or the width of the row if there is none
+	 * */
+	private int nextBit(long[] bits, int from, boolean set) {
+
+		if(from >= width) {
+			return width;
+		}
+
+		int i = from >>> 6;
+		long word = (set ? bits[i] : ~bits[i]) & (-1L << from);
+
+		while(word == 0) {
+
+			if(++i == words) {
+				return width;
+			}
+
+			word = set ? bits[i] : ~bits[i];
+		}
+
+		return Math.min(width, (i << 6) + Long.numberOfTrailingZeros(word));
+	}
+
+	/**
+	 * Finishes the components that are still open and compacts the results.
+	 *
+	 * */
+	void end() {
+
+		curCount = 0;
+		rowPixels = null;
+
+		endRow(-2);
+
+		// Un slot unido siempre apunta a uno anterior, asi que basta una pasada en orden
+		for(int s = 0;s < slots;s++) {
+
+			if(used[s]) {
+				slotParent[s] = ~count;
+				minX[count] = minX[s];
+				minY[count] = minY[s];
+				maxX[count] = maxX[s];
+				maxY[count] = maxY[s];
+
+				if(statistics) {
+					System.arraycopy(stats, s * STATS, stats, count * STATS, STATS);
+				}
+
+				count++;
+			} else {
+				slotParent[s] = slotParent[slotParent[s]];
+			}
+
+		}
+
+	}
+
+	/**
+	 * Returns the component, after {@code end} is called, that the given span belongs to.
+	 *
+	 * @param span the index of the span
+	 *
+	 * @return the index of its component
+	 *
+	 * */
+	int spanComponent(int span) {
+		return ~slotParent[spanSlot[span]];
+	}
+
+	/**
+	 * Returns the component, after {@code end} is called, of the given finished slot.
+	 *
+	 * @param slot the slot of a finished component
+	 *
+	 * @return the index of its component
+	 *
+	 * */
+	int slotComponent(int slot) {
+		return ~slotParent[slot];
+	}
+
+	/**
+	 * Adds a run to the current row, joined with the runs of the previous row it touches.
+	 *
+	 * @return the label of the run. A new label has no bounds until its pixels are included
+	 * */
+	private int link(int start, int end, int y) {
+
+		while(prevIndex < prevCount && prevEnd[prevIndex] + reach <= start) {
+			prevIndex++;
+		}
+
+		int label = -1;
+
+		// No se avanza prevIndex aqui, el siguiente run puede tocar el ultimo de estos
+		for(int k = prevIndex;k < prevCount && prevStart[k] < end + reach;k++) {
+
+			final int l = find(prevLabel[k]);
+
+			label = label < 0 ? l : union(label, l);
+
+		}
+
+		if(label < 0) {
+
+			label = newLabel();
+
+			labelMinX[label] = Integer.MAX_VALUE;
+			labelMinY[label] = y;
+			labelMaxX[label] = Integer.MIN_VALUE;
+			labelMaxY[label] = y;
+
+		}
+
+		curStart[curCount] = start;
+		curEnd[curCount] = end;
+		curLabel[curCount] = label;
+		curCount++;
+
+		return label;
+	}
+
+	/**
+	 * Adds the pixels of a run of the image to the bounds, and the spans, of the given label.
+	 * */
+	private void include(int label, int start, int end, int y) {
+
+		labelMinX[label] = Math.min(labelMinX[label], start);
+		labelMaxX[label] = Math.max(labelMaxX[label], end - 1);
+		labelMaxY[label] = y;
+
+		if(statistics) {
+			accumulate(label, start, end, y);
+		}
+
+		if(recordSpans) {
+
+			if(spanCount == spanY.length) {
+				growSpans();
+			}
+
+			spanY[spanCount] = y;
+			spanStart[spanCount] = start;
+			spanEnd[spanCount] = end;
+			spanSlot[spanCount] = labelSlot[label];
+			spanCount++;
+		}
+
+	}
+
+	private void accumulate(int label, int start, int end, int y) {
+
+		final int base = label * STATS;
+		final long pixels = end - start;
+
+		long a = 0, r = 0, g = 0, b = 0;
+
+		for(int x = start;x < end;x++) {
+
+			final int color = rowPixels[rowOffset + x];
+
+			a += color >>> 24;
+			r += (color >> 16) & 0xFF;
+			g += (color >> 8) & 0xFF;
+			b += color & 0xFF;
+		}
+
+		labelStats[base+PIXELS] += pixels;
+		// Suma de start a end - 1
+		labelStats[base+SUM_X] += pixels * (start + end - 1) / 2;
+		labelStats[base+SUM_Y] += pixels * y;
+		labelStats[base+SUM_A] += a;
+		labelStats[base+SUM_R] += r;
+		labelStats[base+SUM_G] += g;
+		labelStats[base+SUM_B] += b;
+	}
+
+	private void endRow(int y) {
+
+		for(int i = 0;i < curCount;i++) {
+			final int root = find(curLabel[i]);
+			curLabel[i] = root;
+			labelSeen[root] = y;
+		}
+
+		// Los componentes de la fila anterior que no siguen en esta estan terminados
+		for(int k = 0;k < prevCount;k++) {
+
+			final int root = find(prevLabel[k]);
+
+			if(labelSeen[root] != y) {
+				labelSeen[root] = y;
+				finish(root);
+				pending[pendingCount++] = root;
+			}
+
+		}
+
+		for(int i = 0;i < pendingCount;i++) {
+			free[freeCount++] = pending[i];
+		}
+
+		pendingCount = 0;
+
+		int[] tmp = prevStart;
+		prevStart = curStart;
+		curStart = tmp;
+
+		tmp = prevEnd;
+		prevEnd = curEnd;
+		curEnd = tmp;
+
+		tmp = prevLabel;
+		prevLabel = curLabel;
+		curLabel = tmp;
+
+		prevCount = curCount;
+		curCount = 0;
+	}
+
+	private void finish(int label) {
+
+		final int slot = labelSlot[label];
+
+		minX[slot] = labelMinX[label];
+		minY[slot] = labelMinY[label];
+		maxX[slot] = labelMaxX[label];
+		maxY[slot] = labelMaxY[label];
+		used[slot] = true;
+		finished++;
+
+		if(statistics) {
+			System.arraycopy(labelStats, label * STATS, stats, slot * STATS, STATS);
+		}
+
+		if(onFinish != null) {
+			onFinish.accept(slot);
+		}
+	}
+
+	private int newLabel() {
+
+		final int label;
+
+		if(freeCount > 0) {
+			label = free[--freeCount];
+		} else {
+
+			if(labelCount == parent.length) {
+				growLabels();
+			}
+
+			label = labelCount++;
+		}
+
+		if(slots == used.length) {
+			growSlots();
+		}
+
+		parent[label] = label;
+		labelSlot[label] = slots;
+		labelSeen[label] = -1;
+		slotParent[slots] = slots;
+		used[slots++] = false;
+
+		if(statistics) {
+			Arrays.fill(labelStats, label * STATS, label * STATS + STATS, 0L);
+		}
+
+		return label;
+	}
+
+	private int union(int a, int b) {
+
+		if(a == b) {
+			return a;
+		}
+
+		// Se queda como raiz la que se encontro antes
+		final int root = labelSlot[a] < labelSlot[b] ? a : b;
+		final int child = root == a ? b : a;
+
+		parent[child] = root;
+		slotParent[labelSlot[child]] = labelSlot[root];
+
+		labelMinX[root] = Math.min(labelMinX[root], labelMinX[child]);
+		labelMinY[root] = Math.min(labelMinY[root], labelMinY[child]);
+		labelMaxX[root] = Math.max(labelMaxX[root], labelMaxX[child]);
+		labelMaxY[root] = Math.max(labelMaxY[root], labelMaxY[child]);
+
+		if(statistics) {
+			for(int k = 0;k < STATS;k++) {
+				labelStats[root * STATS + k] += labelStats[child * STATS + k];
+			}
+		}
+
+		pending[pendingCount++] = child;
+
+		return root;
+	}
+
+	private int find(int label) {
+
+		while(parent[label] != label) {
+			parent[label] = parent[parent[label]];
+			label = parent[label];
+		}
+
+		return label;
+	}
+
+	private void growLabels() {
+
+		final int capacity = Math.max(16, parent.length * 2);
+
+		parent = Arrays.copyOf(parent, capacity);
+		labelMinX = Arrays.copyOf(labelMinX, capacity);
+		labelMinY = Arrays.copyOf(labelMinY, capacity);
+		labelMaxX = Arrays.copyOf(labelMaxX, capacity);
+		labelMaxY = Arrays.copyOf(labelMaxY, capacity);
+		labelSlot = Arrays.copyOf(labelSlot, capacity);
+		labelSeen = Arrays.copyOf(labelSeen, capacity);
+
+		if(statistics) {
+			labelStats = Arrays.copyOf(labelStats, capacity * STATS);
+		}
+		free = Arrays.copyOf(free, capacity);
+		pending = Arrays.copyOf(pending, capacity);
+	}
+
+	private void growSlots() {
+
+		final int capacity = Math.max(16, used.length * 2);
+
+		minX = Arrays.copyOf(minX, capacity);
+		minY = Arrays.copyOf(minY, capacity);
+		maxX = Arrays.copyOf(maxX, capacity);
+		maxY = Arrays.copyOf(maxY, capacity);
+		used = Arrays.copyOf(used, capacity);
+		slotParent = Arrays.copyOf(slotParent, capacity);
+
+		if(statistics) {
+			stats = Arrays.copyOf(stats, capacity * STATS);
+		}
+	}
+
+	private void growSpans() {
+
+		final int capacity = Math.max(16, spanY.length * 2);
+
+		spanY = Arrays.copyOf(spanY, capacity);
+		spanStart = Arrays.copyOf(spanStart, capacity);
+		spanEnd = Arrays.copyOf(spanEnd, capacity);
+		spanSlot = Arrays.copyOf(spanSlot, capacity);
+	}
+
+}
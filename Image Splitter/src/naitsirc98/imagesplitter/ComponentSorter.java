@@ -0,0 +1,258 @@
+package naitsirc98.imagesplitter;
+
+import java.util.Arrays;
+
+/**
+ * Sorts the components found by the automatic split into rows and columns.
+ *
+ * <p>Components are first ordered by the sum of their centers. The first one is the pivot of the first row, and the pivots
+ * of the next rows are found by casting a ray down from it. Then, for every pivot, a ray is cast to the right to find the
+ * rest of the columns of that row. Components that are not reached by any ray are discarded.</p>
+ *
+ * <p>The sort checks a {@link CancellationToken} once per row. If it is cancelled, the rows that were not sorted yet are
+ * appended as they are: first their pivots and then the components that were not placed, with row and column -1.</p>
+ *
+ * <p>Each ray is resolved with a single pass over the components that have not been placed yet, instead of testing
+ * every pixel it crosses. Buffers grow as needed and are reused between calls, so instances of this class must not be
+ * shared between threads.</p>
+ *
+ * */
+final class ComponentSorter {
+
+	private long[] keys = new long[0];
+	private int[] remaining = new int[0];
+	private int[] pivots = new int[0];
+	private int[] rows = new int[0];
+	private int[] columns = new int[0];
+	int[] order = new int[0];
+	private boolean[] taken = new boolean[0];
+
+	/**
+	 * Sorts the given components, which are inclusive bounds.
+	 *
+	 * @param count the number of components
+	 * @param minX the first column of each component
+	 * @param minY the first row of each component
+	 * @param maxX the last column of each component
+	 * @param maxY the last row of each component
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param token the cancellation token, or null
+	 * @param components the bounds to fill for each component, or null to create new ones
+	 *
+	 * @return the sorted list of the subimage bounds. The component of each one is kept in {@code order}
+	 *
+	 * */
+	SplittedImageList sort(int count, int[] minX, int[] minY, int[] maxX, int[] maxY, int width, int height,
+			CancellationToken token, ImageBounds[] components) {
+
+		if(count == 0) {
+			return new SplittedImageList();
+		}
+
+		ensureCapacity(count);
+
+		for(int i = 0;i < count;i++) {
+
+			final int centerX = (maxX[i] + 1) / 2;
+			final int centerY = (maxY[i] + 1) / 2;
+
+			keys[i] = ((long) (centerX + centerY) << 32) | i;
+
+			taken[i] = false;
+		}
+
+		// Ordenacion estable por la suma de los centros
+		Arrays.sort(keys, 0, count);
+
+		int remainingCount = 0;
+
+		for(int i = 1;i < count;i++) {
+			remaining[remainingCount++] = (int) keys[i];
+		}
+
+		final int first = (int) keys[0];
+
+		rows[first] = 0;
+		columns[first] = 0;
+		taken[first] = true;
+
+		int pivotCount = 0;
+		pivots[pivotCount++] = first;
+
+		// Ordeno la primera columna
+
+		final int from = minX[first];
+		final int to = maxX[first] + 1;
+
+		boolean cancelled = false;
+
+		for(int y = maxY[first] + 1;y < height;) {
+
+			if(token != null && token.isCancelled()) {
+				cancelled = true;
+				break;
+			}
+
+			int best = -1;
+			int bestX = 0;
+			int bestY = 0;
+
+			for(int k = 0;k < remainingCount;k++) {
+
+				final int b = remaining[k];
+
+				if(taken[b] || minX[b] >= to || maxX[b] < from || maxY[b] < y) {
+					continue;
+				}
+
+				final int hitY = Math.max(y, minY[b]);
+				final int hitX = Math.max(from, minX[b]);
+
+				if(hitY < height && (best < 0 || hitY < bestY || (hitY == bestY && hitX < bestX))) {
+					best = b;
+					bestX = hitX;
+					bestY = hitY;
+				}
+
+			}
+
+			if(best < 0) {
+				break;
+			}
+
+			rows[best] = pivotCount;
+			columns[best] = 0;
+			taken[best] = true;
+			pivots[pivotCount++] = best;
+
+			y = maxY[best] + 2;
+		}
+
+		remainingCount = compact(remainingCount);
+
+		// Ahora tenemos la primera columna ordenada, con lo que podemos
+		// buscar por 'rays' los de su misma coordenada y
+
+		int size = 0;
+		int p = 0;
+
+		for(;p < pivotCount && !cancelled;p++) {
+
+			if(token != null && token.isCancelled()) {
+				cancelled = true;
+				break;
+			}
+
+			final int pivot = pivots[p];
+			final int top = minY[pivot];
+			final int bottom = maxY[pivot];
+
+			order[size++] = pivot;
+
+			int column = 1;
+
+			for(int x = maxX[pivot] + 1;x < width;) {
+
+				int best = -1;
+				int bestX = 0;
+				int bestY = 0;
+
+				for(int k = 0;k < remainingCount;k++) {
+
+					final int b = remaining[k];
+
+					if(taken[b] || minY[b] > bottom || maxY[b] < top || maxX[b] < x) {
+						continue;
+					}
+
+					final int hitX = Math.max(x, minX[b]);
+					final int hitY = Math.max(top, minY[b]);
+
+					if(hitX < width && (best < 0 || hitX < bestX || (hitX == bestX && hitY < bestY))) {
+						best = b;
+						bestX = hitX;
+						bestY = hitY;
+					}
+
+				}
+
+				if(best < 0) {
+					break;
+				}
+
+				rows[best] = rows[pivot];
+				columns[best] = column++;
+				taken[best] = true;
+				order[size++] = best;
+
+				x = maxX[best] + 2;
+			}
+
+			remainingCount = compact(remainingCount);
+		}
+
+		if(cancelled) {
+
+			for(;p < pivotCount;p++) {
+				order[size++] = pivots[p];
+			}
+
+			for(int k = 0;k < remainingCount;k++) {
+				final int b = remaining[k];
+				rows[b] = -1;
+				columns[b] = -1;
+				order[size++] = b;
+			}
+
+		}
+
+		SplittedImageList result = new SplittedImageList(size);
+
+		result.complete = !cancelled;
+
+		for(int i = 0;i < size;i++) {
+
+			final int c = order[i];
+
+			ImageBounds bounds = components != null ? components[c]
+					: new ImageBounds(minX[c], minY[c], maxX[c]-minX[c]+1, maxY[c]-minY[c]+1);
+
+			bounds.row = rows[c];
+			bounds.column = columns[c];
+
+			result.add(bounds);
+		}
+
+		return result;
+	}
+
+	private int compact(int remainingCount) {
+
+		int size = 0;
+
+		for(int k = 0;k < remainingCount;k++) {
+			if(!taken[remaining[k]]) {
+				remaining[size++] = remaining[k];
+			}
+		}
+
+		return size;
+	}
+
+	private void ensureCapacity(int count) {
+
+		if(keys.length < count) {
+			final int capacity = Math.max(count, keys.length * 2);
+			keys = new long[capacity];
+			remaining = new int[capacity];
+			pivots = new int[capacity];
+			rows = new int[capacity];
+			columns = new int[capacity];
+			order = new int[capacity];
+			taken = new boolean[capacity];
+		}
+
+	}
+
+}
@@ -34,39 +34,93 @@ public final class ImageBounds implements Comparable<ImageBounds> {
 			throw new IllegalArgumentException();
 		}
 		
+		for(int i = 1;i < bounds.length;i++) {
+			if(!bounds[i-1].isConsecutive(bounds[i])) {
+				throw new IllegalStateException("Images are not consecutive: "+bounds[i-1]+", "+bounds[i]);
+			}
+		}
+		
+		return union(bounds);
+	}
+	
+	/**
+	 * Combines one or more ImageBounds into one, like {@link #blend(ImageBounds...)}, but without checking that they
+	 * are consecutive. The result has the row and column of the first one.
+	 * 
+	 * @param bounds subimages to combine
+	 * 
+	 * @return the result subimage
+	 * 
+	 * */
+	static ImageBounds union(ImageBounds... bounds) {
+		
 		final ImageBounds result = bounds[0].clone();
 		
 		for(int i = 1;i < bounds.length;i++) {
 			
 			final ImageBounds b = bounds[i];
 			
-			if(!bounds[i-1].isConsecutive(b)) {
-				throw new IllegalStateException("Images are not consecutive: "+bounds[i-1]+", "+b);
-			}
-			
 			if(b.x < result.x) {
-				result.x = b.x;
 				result.width += result.x - b.x;
-			} else if(b.x >= result.x) {
-				result.width = Math.max(result.width, b.x+b.width-result.x);
+				result.x = b.x;
 			}
 			
+			result.width = Math.max(result.width, b.x+b.width-result.x);
+			
 			if(b.y < result.y) {
-				result.y = b.y;
 				result.height += result.y - b.y;
-			} else if(b.y >= result.y) {
-				result.height = Math.max(result.height, b.y+b.height-result.y);
+				result.y = b.y;
 			}
 			
+			result.height = Math.max(result.height, b.y+b.height-result.y);
 			
 		}
 		
+		if(bounds.length > 1) {
+			result.mask = blendMasks(bounds);
+			result.statistics = blendStatistics(bounds);
+		}
+		
 		return result;
 	}
 	
+	private static PixelStatistics blendStatistics(ImageBounds... bounds) {
+		
+		final PixelStatistics[] statistics = new PixelStatistics[bounds.length];
+		
+		for(int i = 0;i < bounds.length;i++) {
+			
+			if(bounds[i].statistics == null) {
+				return null;
+			}
+			
+			statistics[i] = bounds[i].statistics;
+		}
+		
+		return PixelStatistics.union(statistics);
+	}
+	
+	private static OccupancyMask blendMasks(ImageBounds... bounds) {
+		
+		final OccupancyMask[] masks = new OccupancyMask[bounds.length];
+		
+		for(int i = 0;i < bounds.length;i++) {
+			
+			if(bounds[i].mask == null) {
+				return null;
+			}
+			
+			masks[i] = bounds[i].mask;
+		}
+		
+		return OccupancyMask.union(masks);
+	}
+	
 	int x, y;
 	int width = 1, height = 1;
 	int row = -1, column = -1;
+	OccupancyMask mask;
+	PixelStatistics statistics;
 	
 	public ImageBounds() {
 		x = y = 0;
@@ -185,6 +239,28 @@ public final class ImageBounds implements Comparable<ImageBounds> {
 		this.y = y;
 	}
 	
+	/**
+	 * Moves this subimage, with its mask and its mass center if it has them.
+	 * 
+	 * @param dx the distance to move in the x axis
+	 * @param dy the distance to move in the y axis
+	 * 
+	 * */
+	void translate(int dx, int dy) {
+		
+		x += dx;
+		y += dy;
+		
+		if(mask != null) {
+			mask = mask.translate(dx, dy);
+		}
+		
+		if(statistics != null) {
+			statistics = statistics.translate(dx, dy);
+		}
+		
+	}
+	
 	public int getCenterX() {
 		return (x + width) / 2;
 	}
@@ -193,6 +269,28 @@ public final class ImageBounds implements Comparable<ImageBounds> {
 		return (y + height) / 2;
 	}
 
+	/**
+	 * Returns the x coordinate of the mass center of this subimage, the mean x of its pixels. If the split that found
+	 * it did not accumulate {@link PixelStatistics}, the center of its bounds is returned instead.
+	 * 
+	 * @return the x coordinate of the mass center
+	 * 
+	 * */
+	public double getMassCenterX() {
+		return statistics != null ? statistics.getMassCenterX() : x + (width - 1) / 2.0;
+	}
+	
+	/**
+	 * Returns the y coordinate of the mass center of this subimage, the mean y of its pixels. If the split that found
+	 * it did not accumulate {@link PixelStatistics}, the center of its bounds is returned instead.
+	 * 
+	 * @return the y coordinate of the mass center
+	 * 
+	 * */
+	public double getMassCenterY() {
+		return statistics != null ? statistics.getMassCenterY() : y + (height - 1) / 2.0;
+	}
+
 	public int getRow() {
 		return row;
 	}
@@ -212,6 +310,26 @@ public final class ImageBounds implements Comparable<ImageBounds> {
 	public int getSize() {
 		return width*height;
 	}
+	
+	/**
+	 * Returns the exact pixels of this subimage, if the split that found it recorded them.
+	 * 
+	 * @return the occupancy mask, or null if it was not recorded
+	 * 
+	 * */
+	public OccupancyMask getMask() {
+		return mask;
+	}
+	
+	/**
+	 * Returns the statistics of the pixels of this subimage, if the split that found it accumulated them.
+	 * 
+	 * @return the pixel statistics, or null if they were not accumulated
+	 * 
+	 * */
+	public PixelStatistics getStatistics() {
+		return statistics;
+	}
 
 	@Override
 	public int hashCode() {
@@ -259,6 +377,8 @@ public final class ImageBounds implements Comparable<ImageBounds> {
 		final ImageBounds clone = new ImageBounds(x,y,width,height);
 		clone.row = row;
 		clone.column = column;
+		clone.mask = mask;
+		clone.statistics = statistics;
 		return clone;
 	}
 
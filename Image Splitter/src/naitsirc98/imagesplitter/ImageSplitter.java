@@ -1,11 +1,11 @@
 package naitsirc98.imagesplitter;
 
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Deque;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Objects of this class can split an image into multiple ones.
@@ -24,14 +24,17 @@ import java.util.List;
  * <p>An ImageSplitter works with 1 dimensional {@code int} arrays. The array represents the image, where each value is the 
  * color of a pixel in ARGB format (1 byte for alpha, 1 byte for red, 1 byte for green and 1 byte for blue).</p>
  * 
- * <p>When {@code split} method is called, it makes a copy of the image array so the <b>original image is never modified</b> within this
+ * <p>The image array is only read by the {@code split} methods, so the <b>original image is never modified</b> within this
  * class.<p>
  * 
  * <p>However, when set, the image is not copied, so <b>if the array is modified outside this class, 
  * it will modified here as well</b>.</p>
  * 
  * <p>Since it uses 1 dimensional arrays, you must specify the width and height of the image. You may choose a certain region of the image
- * to be splitted by setting a smaller width and/or height. Bounds are checked at start of each <i>split</i> method</p>
+ * to be splitted with the {@code setRegion} method, giving its origin, width and height, and the {@code stride}, the number of
+ * values between two rows of the array, which is the width of the whole image. The region is split in place, without copying it.
+ * Subimages are relative to the region, unless {@code setImageCoordinates} is enabled. Bounds are checked at start of each
+ * <i>split</i> method</p>
  * 
  * <p>Usually, and specially when you are working with spritesheets, there might be subimages that have particles or something similar.
  * This is not a problem if you split the image with the 2 first split methods, but it could cause strange results when
@@ -40,7 +43,7 @@ import java.util.List;
  * 
  * <ul>
  * 
- * <p>{@code particleDistance} is the maximum distance between a particle an its parent.</p>
+ * <p>{@code particleDistance} is the maximum distance between the nearest pixels of a particle an its parent.</p>
  * 
  * <p>{@code particleSize} is the maximum size of a particle. Sprites with a smaller or equal size are interpreted 
  * as particles. Remember that <i>size = width * height</i>.</p>
@@ -50,8 +53,36 @@ import java.util.List;
  * possibility of interpret normal sprites as particles, so be careful. A safer but manual way of handle particles is 
  * using the {@code blend} method of the {@link SplittedImageList} class</p>
  * 
+ * <p>Another way of keeping detached parts together is the {@code bridgeGap} attribute: parts separated by up to that
+ * number of background pixels are joined while the image is scanned, looking at the pixels themselves instead of
+ * the bounds. Pixels are 4-connected by default, set the {@code connectivity} to 8 to also join pixels that only share
+ * a corner.</p>
+ * 
+ * <p>Particles are merged once all the subimages have been found, so the result does not depend on the order in which they
+ * are found. A particle near two subimages joins both of them into one.</p>
+ * 
  * <p>You may tell the ImageSplitter what kind of background the image has. By default it is a transparent background, but 
- * you can set whatever background you need with the {@code setBackground} method. See {@link BackgroundType} for more information</p>
+ * you can set whatever background you need with the {@code setBackground} method. See {@link BackgroundType} for more information.
+ * For noisy backgrounds, a {@link PaletteBackground} accepts several colors with some tolerance, and it can also be detected
+ * from the border of the image.</p>
+ * 
+ * <p>The automatic split can also record the exact pixels of each subimage as an {@link OccupancyMask}, useful for
+ * pixel perfect collisions. This is disabled by default, enable it with the {@code setMasks} method. In the same way,
+ * the {@code setStatistics} method enables the {@link PixelStatistics} of each subimage: its number of pixels, its mass
+ * center and its mean color, accumulated in the same pass.</p>
+ * 
+ * <p>The background, particle size and particle distance are kept in an immutable {@link SplitConfig}, so the same
+ * configuration can be shared between threads. The automatic split uses the scratch buffers of a {@link SplitWorkspace},
+ * which you may pass explicitly. Otherwise, the workspace of the current thread is used.</p>
+ * 
+ * <p>If you do not know which of the above fits an image best, {@code splitAuto} samples the image and chooses for you,
+ * splitting big images in parallel when possible. See {@link SplitPlan}.</p>
+ * 
+ * <p>To start working with the subimages before the whole image has been scanned, use the {@link SplitPublisher}
+ * returned by {@code publisher}, which publishes each subimage as soon as it is found.</p>
+ * 
+ * <p>Images with more than {@code Integer.MAX_VALUE} pixels do not fit in one array. They can be split by grid or
+ * automatically with the static methods that take a {@link TiledImage}, which stores the image in chunks of rows.</p>
  * 
  * 
  * */
@@ -59,9 +90,10 @@ public class ImageSplitter {
 
 	private int[] image;
 	private int width, height;
-	private int particleSize;
-	private int particleDistance;
-	private BackgroundType background = BackgroundType.TRANSPARENT_0x33;
+	private int originX, originY;
+	private int stride;
+	private boolean imageCoordinates;
+	private SplitConfig config = SplitConfig.DEFAULT;
 
 	/**
 	 * Default constructor.
@@ -85,6 +117,25 @@ public class ImageSplitter {
 		this.height = height;
 	}
 	
+	/**
+	 * Constructs a new ImageSplitter object that splits a region of the image.
+	 * 
+	 * @param image the array image
+	 * @param x the x coordinate of the region
+	 * @param y the y coordinate of the region
+	 * @param width the width of the region to split
+	 * @param height the height of the region to split
+	 * @param stride the number of values between the start of two consecutive rows of the array, usually the width of
+	 * the whole image
+	 * 
+	 **/
+	public ImageSplitter(int[] image, int x, int y, int width, int height, int stride) {
+		this(image, width, height);
+		this.originX = x;
+		this.originY = y;
+		this.stride = stride;
+	}
+	
 	/**
 	 * Splits the image by fixed width and height.
 	 * 
@@ -98,7 +149,43 @@ public class ImageSplitter {
 	 **/
 	public SplittedImageList split(int w, int h, int hPadding, int vPadding) {
 		
-		check();
+		// El grid no lee los pixeles, solo se comprueba la region
+		view();
+		
+		return translate(grid(width, height, w, h, hPadding, vPadding));
+	}
+
+	/**
+	 * Splits the given tiled image by fixed width and height. See {@link #split(int, int, int, int)}.
+	 * 
+	 * @param image the tiled image
+	 * @param w the width of a subimage
+	 * @param h the height of a subimage
+	 * @param hPadding the horizontal padding
+	 * @param vPadding the vertical padding 
+	 * 
+	 * @return the list of the subimage bounds
+	 * 
+	 **/
+	public static SplittedImageList split(TiledImage image, int w, int h, int hPadding, int vPadding) {
+		return grid(image.getWidth(), image.getHeight(), w, h, hPadding, vPadding);
+	}
+
+	/**
+	 * Splits the given tiled image by a given number of rows and columns. See {@link #split(int, int)}.
+	 * 
+	 * @param image the tiled image
+	 * @param rows the number of rows
+	 * @param columns the number of columns
+	 * 
+	 * @return the list of the subimage bounds
+	 * 
+	 * */
+	public static SplittedImageList split(TiledImage image, int rows, int columns) {
+		return split(image, image.getWidth()/columns, image.getHeight()/rows, 0, 0);
+	}
+
+	private static SplittedImageList grid(int width, int height, int w, int h, int hPadding, int vPadding) {
 		
 		final int columns = width / (w+hPadding);
 		final int rows = height / (h+vPadding);
@@ -145,91 +232,196 @@ public class ImageSplitter {
 	 * 
 	 **/
 	public SplittedImageList split() {
-		
-		check();
-
-		SplittedImageList sprites = new SplittedImageList();
+		return split(SplitWorkspace.get());
+	}
 
-		final int[] pixels = image.clone();
+	/**
+	 * Splits the image automatically, using the scratch buffers of the given workspace. See {@link #split()}.
+	 * 
+	 * @param workspace the workspace to use
+	 * 
+	 * @return the list of the subimage bounds
+	 * 
+	 **/
+	public SplittedImageList split(SplitWorkspace workspace) {
+		return translate(split(view(), config, workspace));
+	}
 
-		for(int y = 0;y < height;y++) {
-			for(int x = 0;x < width;x++) {
+	/**
+	 * Splits the image automatically, stopping as soon as the given token is cancelled. See {@link #split()}.
+	 * 
+	 * <p>The token is checked once per row of the image. If it is cancelled, the subimages found until then are
+	 * returned, and {@link SplittedImageList#isComplete()} returns false. Subimages that were crossing the last row
+	 * scanned are cut there.</p>
+	 * 
+	 * @param token the cancellation token, or null
+	 * @param listener the progress listener, or null
+	 * 
+	 * @return the list of the subimage bounds
+	 * 
+	 **/
+	public SplittedImageList split(CancellationToken token, ProgressListener listener) {
+		return translate(split(view(), config, SplitWorkspace.get(), token, listener));
+	}
 
-				if(!background.contains(pixels[x+y*width])) {
+	/**
+	 * Splits the given image automatically, based on pixel colors. This method does not depend on the state of any
+	 * ImageSplitter, so it can be called from any number of threads sharing the same configuration, as long as each
+	 * one uses its own workspace.
+	 * 
+	 * @param image the array image
+	 * @param width the width of the region to split
+	 * @param height the height of the region to split
+	 * @param config the split configuration
+	 * @param workspace the workspace to use
+	 * 
+	 * @return the list of the subimage bounds
+	 * 
+	 **/
+	public static SplittedImageList split(int[] image, int width, int height, SplitConfig config, SplitWorkspace workspace) {
+		return split(image, width, height, config, workspace, null, null);
+	}
 
-					ImageBounds r = floodFill(pixels,x,y,width,height);
-					
-					addIfNotParticle(r, sprites);
+	/**
+	 * Splits the given image automatically, stopping as soon as the given token is cancelled. See
+	 * {@link #split(CancellationToken, ProgressListener)} and {@link #split(int[], int, int, SplitConfig, SplitWorkspace)}.
+	 * 
+	 * @param image the array image
+	 * @param width the width of the region to split
+	 * @param height the height of the region to split
+	 * @param config the split configuration
+	 * @param workspace the workspace to use
+	 * @param token the cancellation token, or null
+	 * @param listener the progress listener, or null
+	 * 
+	 * @return the list of the subimage bounds
+	 * 
+	 **/
+	public static SplittedImageList split(int[] image, int width, int height, SplitConfig config, SplitWorkspace workspace,
+			CancellationToken token, ProgressListener listener) {
+		
+		check(image, width, height);
+		
+		return workspace.split(image, width, height, config, token, listener);
+	}
 
-				}
+	/**
+	 * Splits the given tiled image automatically. See {@link #split(int[], int, int, SplitConfig, SplitWorkspace)}.
+	 * 
+	 * @param image the tiled image
+	 * @param config the split configuration
+	 * @param workspace the workspace to use
+	 * 
+	 * @return the list of the subimage bounds
+	 * 
+	 **/
+	public static SplittedImageList split(TiledImage image, SplitConfig config, SplitWorkspace workspace) {
+		return split(image, config, workspace, null, null);
+	}
 
-			}
+	/**
+	 * Splits the given tiled image automatically, stopping as soon as the given token is cancelled. See
+	 * {@link #split(int[], int, int, SplitConfig, SplitWorkspace, CancellationToken, ProgressListener)}.
+	 * 
+	 * @param image the tiled image
+	 * @param config the split configuration
+	 * @param workspace the workspace to use
+	 * @param token the cancellation token, or null
+	 * @param listener the progress listener, or null
+	 * 
+	 * @return the list of the subimage bounds
+	 * 
+	 **/
+	public static SplittedImageList split(TiledImage image, SplitConfig config, SplitWorkspace workspace,
+			CancellationToken token, ProgressListener listener) {
+		
+		if(image == null) {
+			throw new NullPointerException("The image cannot be null!");
 		}
 		
-		return sort(sprites);
+		return workspace.split(image, config, token, listener);
 	}
 	
-	private void addIfNotParticle(ImageBounds r, SplittedImageList sprites) {
+	/**
+	 * Splits the image the way that seems fastest for it, based on a sample of its pixels: as a grid, if the subimages
+	 * are in a regular grid separated by empty rows and columns, automatically in parallel strips, if labeling the image
+	 * takes long enough to be worth several threads and it has empty rows where it can be cut, or automatically by the
+	 * current thread otherwise. Grids are also labeled in parallel when it is worth it. The decision, and the
+	 * statistics it was based on, are returned by {@link SplittedImageList#getPlan()}.
+	 * 
+	 * <p>Whatever the decision, the result is the same as the one of {@link #split()}.</p>
+	 * 
+	 * @return the list of the subimage bounds
+	 * 
+	 **/
+	public SplittedImageList splitAuto() {
+		return translate(splitAuto(view(), config));
+	}
+
+	/**
+	 * Splits the given tiled image the way that seems fastest for it. See {@link #splitAuto()}. Strips are labeled in
+	 * the common fork join pool, using as many threads as available processors.
+	 * 
+	 * @param image the tiled image
+	 * @param config the split configuration
+	 * 
+	 * @return the list of the subimage bounds
+	 * 
+	 **/
+	public static SplittedImageList splitAuto(TiledImage image, SplitConfig config) {
+		return splitAuto(image, config, ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Splits the given tiled image the way that seems fastest for it. See {@link #splitAuto()}.
+	 * 
+	 * @param image the tiled image
+	 * @param config the split configuration
+	 * @param executor the executor where strips are labeled
+	 * @param parallelism the maximum number of strips labeled at the same time, 1 to never split in parallel
+	 * 
+	 * @return the list of the subimage bounds
+	 * 
+	 **/
+	public static SplittedImageList splitAuto(TiledImage image, SplitConfig config, Executor executor, int parallelism) {
 		
-		Iterator<ImageBounds> it = sprites.iterator();
+		if(image == null) {
+			throw new NullPointerException("The image cannot be null!");
+		}
 		
-		while(it.hasNext()) {
-			
-			ImageBounds b = it.next();
-			
-			// Si se cortan, vamos a comprobar si podemos unirlos o no
-			if(b.intersects(r) || b.distance(r) <= particleDistance) {
-				
-				ImageBounds min = ImageBounds.min(b,r);
-				ImageBounds max = ImageBounds.max(b,r);
-				
-				if(min.equals(max)) {
-					continue; // Son iguales
-				}
-				
-				final int dx = Math.abs(r.x-b.x);
-				final int dy = Math.abs(r.y-b.y);
-				
-				if(min.getSize() <= particleSize) {
-					
-					// Ajustamos la x y el ancho si es necesario
-					if(min.x < max.x) {
-						max.x = min.x;
-						max.width += dx;
-					} else if(min.x + min.width > max.x + max.width) {
-						max.width += Math.abs(max.x + max.width - min.x + min.width);
-					}
-					
-					// Ajustamos la y y el alto si es necesario
-					if(min.y < max.y) {
-						max.y = min.y;
-						max.height += dy;
-					} else if(min.y + min.height > max.y + max.height) {
-						max.height += Math.abs(max.y + max.height - min.y + min.height);
-					}
-					
-					if(min.equals(b)) {
-						it.remove();
-					} else {
-						// No se aade
-						return;
-					}
-					
-				}
-					
-				
-			}
-			
+		if(config == null) {
+			throw new NullPointerException("The config cannot be null!");
+		}
+		
+		if(executor == null) {
+			throw new NullPointerException("The executor cannot be null!");
 		}
 		
-		sprites.add(r);
+		return new SplitPlanner(image, config).split(SplitWorkspace.get(), executor, parallelism);
 	}
 
-	private void check() {
+	/**
+	 * Creates a publisher that splits the image automatically and publishes each subimage as soon as it is found. The
+	 * current configuration is used. See {@link SplitPublisher}.
+	 * 
+	 * @param executor the executor where each split runs
+	 * 
+	 * @return the publisher
+	 * 
+	 **/
+	public SplitPublisher publisher(Executor executor) {
+		return imageCoordinates ? new SplitPublisher(view(), config, executor, originX, originY)
+				: new SplitPublisher(view(), config, executor);
+	}
+	
+	/**
+	 * Checks the region to split and creates a view of it.
+	 * */
+	private TiledImage view() {
 		
 		if(image == null) {
 			throw new NullPointerException("The image array cannot be null!");
-		} 
+		}
 		
 		if(width < 0) {
 			throw new IllegalStateException("Width is < 0");
@@ -239,153 +431,36 @@ public class ImageSplitter {
 			throw new IllegalStateException("Height is < 0");
 		}
 		
-		if(width * height < image.length) {
-			throw new IndexOutOfBoundsException("Width * Height must be equals to the length of the image");
-		}
-		
+		return TiledImage.view(image, originX, originY, width, height, getStride());
 	}
-
-	private SplittedImageList sort(SplittedImageList sprites) {
+	
+	private SplittedImageList translate(SplittedImageList sprites) {
 		
-		if(sprites.size() == 0) {
-			return sprites;
-		}
-
-		SplittedImageList result = new SplittedImageList(sprites.size());
-
-		Comparator<ImageBounds> topleft = (ImageBounds a, ImageBounds b) -> {
-			return Integer.compare(a.getCenterX()+a.getCenterY(), b.getCenterX()+b.getCenterY()); 
-		};
-
-		Collections.sort(sprites, topleft);
-
-		ImageBounds first = sprites.get(0);
-
-		first.row = 0;
-		first.column = 0;
-
-		// Ordeno la primera columna
-
-		List<ImageBounds> pivots = new SplittedImageList();
-
-		pivots.add(first);
-
-		for(int y = first.y+first.height;y < height;y++) {
-			y = findRow(y, first.x, first.width, sprites, pivots);
-		}
-
-		sprites.removeAll(result);
-
-		// Ahora tenemos la primera columna ordenada, con lo que podemos
-		// buscar por 'rays' los de su misma coordenada y
-
-		MutableInteger column = new MutableInteger();
-
-		for(ImageBounds pivot : pivots) {
-			result.add(pivot);
-			column.value = 1;
-
-			for(int x = pivot.x+pivot.width;x < width;x++) {
-				x = findColumn(x, pivot.y, pivot.y+pivot.height, pivot.row,
-						column, sprites, result);
-			}
-			sprites.removeAll(result);
+		if(imageCoordinates) {
+			sprites.translate(originX, originY);
 		}
 		
-		return result;
+		return sprites;
 	}
-
-	private int findRow(int y, int from, int to, 
-			List<ImageBounds> src, List<ImageBounds> dst) {
-
-		for(int x = from;x < to;x++) {
-
-			for(ImageBounds bounds : src) {
-
-				if(bounds.contains(x, y)) {
-					bounds.row = dst.size();
-					bounds.column = 0;
-					dst.add(bounds);
-					return bounds.y + bounds.height;
-				}
-
-			}
-
+	
+	private static void check(int[] image, int width, int height) {
+		
+		if(image == null) {
+			throw new NullPointerException("The image array cannot be null!");
+		} 
+		
+		if(width < 0) {
+			throw new IllegalStateException("Width is < 0");
 		}
-
-		return y;
-
-	}
-
-	private int findColumn(int x, int from, int to, int row, MutableInteger column,
-			List<ImageBounds> src, List<ImageBounds> dst) {
-
-		for(int y = from;y < to;y++) {
-
-			for(ImageBounds bounds : src) {
-
-				if(bounds.contains(x, y)) {
-					bounds.column = column.value++;
-					bounds.row = row;
-					dst.add(bounds);
-					return bounds.x + bounds.width;
-				}
-
-			}
-
+		
+		if(height < 0) {
+			throw new IllegalStateException("Height is < 0");
 		}
-
-		return x;
-	}
-
-
-	private ImageBounds floodFill(int[] pixels, int x0, int y0, int width, int height) {
-
-		ImageBounds frame = new ImageBounds(x0,y0,1,1);
-
-		Deque<Point> queue = new LinkedList<>();
-
-		queue.add(new Point(x0,y0));
-
-		while(!queue.isEmpty()) {
-
-			final Point p = queue.poll();
-
-			final int x = p.x;
-			final int y = p.y;
-
-			if(x < 0 || x >= width || y < 0 || y >= height) {
-				continue;
-			}
-
-			if(background.contains(pixels[x+y*width])) {
-				continue;
-			}
-
-			pixels[x+y*width] = background.threshold;
-
-			if(x < frame.x) {
-				frame.x = x;
-				frame.width++;
-			} else if(x > frame.x + frame.width) {
-				frame.width++;
-			}
-
-			if(y < frame.y) {
-				frame.y = y;
-				frame.height++;
-			} else if(y > frame.y + frame.height) {
-				frame.height++;
-			}
-
-			queue.add(new Point(x-1,y));
-			queue.add(new Point(x+1,y));
-			queue.add(new Point(x,y-1));
-			queue.add(new Point(x,y+1));
-
+		
+		if((long) width * height > image.length) {
+			throw new IndexOutOfBoundsException("Width * Height is greater than the length of the image");
 		}
-
-		return frame;
+		
 	}
 	
 	public void setImage(int[] image) {
@@ -411,33 +486,144 @@ public class ImageSplitter {
 	public int getHeight() {
 		return height;
 	}
+	
+	/**
+	 * Sets the region of the image to split. The image is not copied.
+	 * 
+	 * @param x the x coordinate of the region
+	 * @param y the y coordinate of the region
+	 * @param width the width of the region
+	 * @param height the height of the region
+	 * 
+	 * */
+	public void setRegion(int x, int y, int width, int height) {
+		this.originX = x;
+		this.originY = y;
+		this.width = width;
+		this.height = height;
+	}
+	
+	public int getOriginX() {
+		return originX;
+	}
+	
+	public void setOriginX(int x) {
+		this.originX = x;
+	}
+	
+	public int getOriginY() {
+		return originY;
+	}
+	
+	public void setOriginY(int y) {
+		this.originY = y;
+	}
+	
+	/**
+	 * @return the number of values between the start of two consecutive rows of the array, which is the width of the
+	 * region unless it has been set
+	 * */
+	public int getStride() {
+		return stride == 0 ? width : stride;
+	}
+	
+	/**
+	 * Sets the number of values between the start of two consecutive rows of the array, that is, the width of the whole
+	 * image when only a region of it is split. 0 means the same as the width of the region.
+	 * 
+	 * @param stride the stride
+	 * 
+	 * */
+	public void setStride(int stride) {
+		this.stride = stride;
+	}
+	
+	public boolean isImageCoordinates() {
+		return imageCoordinates;
+	}
+	
+	/**
+	 * Sets whether the subimages of a region are returned in the coordinates of the whole image, or relative to the
+	 * origin of the region, which is the default.
+	 * 
+	 * @param imageCoordinates true to use the coordinates of the whole image
+	 * 
+	 * */
+	public void setImageCoordinates(boolean imageCoordinates) {
+		this.imageCoordinates = imageCoordinates;
+	}
 
 
 	public int getParticleSize() {
-		return particleSize;
+		return config.getParticleSize();
 	}
 
 
 	public void setParticleSize(int particleSize) {
-		this.particleSize = particleSize;
+		config = config.withParticleSize(particleSize);
 	}
 
 
 	public int getParticleDistance() {
-		return particleDistance;
+		return config.getParticleDistance();
 	}
 	
 	public void setParticleDistance(int distance) {
-		this.particleDistance = distance;
+		config = config.withParticleDistance(distance);
 	}
 	
 	public BackgroundType getBackground() {
-		return background;
+		return config.getBackground();
 	}
 
 
 	public void setBackground(BackgroundType background) {
-		this.background = background;
+		config = config.withBackground(background);
+	}
+	
+	public boolean hasMasks() {
+		return config.hasMasks();
+	}
+	
+	public void setMasks(boolean masks) {
+		config = config.withMasks(masks);
+	}
+	
+	public boolean hasStatistics() {
+		return config.hasStatistics();
+	}
+	
+	public void setStatistics(boolean statistics) {
+		config = config.withStatistics(statistics);
+	}
+	
+	public int getConnectivity() {
+		return config.getConnectivity();
+	}
+	
+	public void setConnectivity(int connectivity) {
+		config = config.withConnectivity(connectivity);
+	}
+	
+	public int getBridgeGap() {
+		return config.getBridgeGap();
+	}
+	
+	public void setBridgeGap(int bridgeGap) {
+		config = config.withBridgeGap(bridgeGap);
+	}
+	
+	public SplitConfig getConfig() {
+		return config;
+	}
+	
+	public void setConfig(SplitConfig config) {
+		
+		if(config == null) {
+			throw new NullPointerException("The config cannot be null!");
+		}
+		
+		this.config = config;
 	}
 
 	/**
@@ -484,20 +670,199 @@ public class ImageSplitter {
 		
 	}
 	
-	private static final class Point {
+	/**
+	 * An implementation of {@link BackgroundType} for backgrounds made of one or more colors, each channel allowing some
+	 * tolerance. Useful for noisy or compressed images, where the background is not exactly one color.
+	 * 
+	 * <p>A value belongs to the background if, for any of the colors, the difference of each channel is smaller or equal
+	 * to the tolerance of that channel. Colors and tolerances are compiled into one lookup table per channel, where each
+	 * entry is a bitset of the colors that accept that channel value, so {@code contains} only needs four table reads
+	 * and an {@code and} per 64 colors.</p>
+	 * 
+	 * */
+	public static class PaletteBackground extends BackgroundType {
 		
-		int x;
-		int y;
+		private static final int MAX_CANDIDATES = 16;
 		
-		Point(int x, int y) {
-			this.x = x;
-			this.y = y;
+		/**
+		 * Detects the background color of an image by sampling its border. The color chosen is the one that has most
+		 * border pixels within the given tolerance, among the most frequent colors of the border.
+		 * 
+		 * @param image the array image
+		 * @param width the width of the image
+		 * @param height the height of the image
+		 * @param tolerance the tolerance of every channel
+		 * 
+		 * @return the detected background
+		 * 
+		 * */
+		public static PaletteBackground detect(int[] image, int width, int height, int tolerance) {
+			
+			if(width <= 0 || height <= 0) {
+				throw new IllegalArgumentException("The image is empty");
+			}
+			
+			final int[] border = border(image, width, height);
+			
+			Map<Integer, Integer> frequencies = new HashMap<>();
+			
+			for(int color : border) {
+				frequencies.merge(color, 1, Integer::sum);
+			}
+			
+			List<Map.Entry<Integer, Integer>> candidates = new ArrayList<>(frequencies.entrySet());
+			
+			candidates.sort((a, b) -> a.getValue().equals(b.getValue()) ? Integer.compare(a.getKey(), b.getKey()) 
+					: Integer.compare(b.getValue(), a.getValue()));
+			
+			int best = candidates.get(0).getKey();
+			int bestCount = -1;
+			
+			for(int i = 0;i < Math.min(MAX_CANDIDATES, candidates.size());i++) {
+				
+				final int color = candidates.get(i).getKey();
+				
+				int count = 0;
+				
+				for(int value : border) {
+					if(near(color, value, tolerance)) {
+						count++;
+					}
+				}
+				
+				if(count > bestCount) {
+					best = color;
+					bestCount = count;
+				}
+				
+			}
+			
+			return new PaletteBackground(tolerance, best);
+		}
+		
+		private static int[] border(int[] image, int width, int height) {
+			
+			final int[] border = new int[height == 1 ? width : width * 2 + Math.max(0, height - 2) * (width == 1 ? 1 : 2)];
+			
+			int n = 0;
+			
+			for(int x = 0;x < width;x++) {
+				border[n++] = image[x];
+				if(height > 1) {
+					border[n++] = image[x + (height-1)*width];
+				}
+			}
+			
+			for(int y = 1;y < height - 1;y++) {
+				border[n++] = image[y*width];
+				if(width > 1) {
+					border[n++] = image[width-1 + y*width];
+				}
+			}
+			
+			return border;
+		}
+		
+		private static boolean near(int color, int value, int tolerance) {
+			
+			for(int shift = 0;shift < 32;shift += 8) {
+				if(Math.abs((color >>> shift & 0xFF) - (value >>> shift & 0xFF)) > tolerance) {
+					return false;
+				}
+			}
+			
+			return true;
+		}
+		
+		private final int words;
+		private final long[] alpha;
+		private final long[] red;
+		private final long[] green;
+		private final long[] blue;
+		
+		/**
+		 * Constructs a new PaletteBackground with the same tolerance for every channel.
+		 * 
+		 * @param tolerance the tolerance of every channel
+		 * @param colors the colors of the background
+		 * 
+		 * */
+		public PaletteBackground(int tolerance, int... colors) {
+			this(colors, tolerance, tolerance, tolerance, tolerance);
+		}
+		
+		/**
+		 * Constructs a new PaletteBackground.
+		 * 
+		 * @param colors the colors of the background
+		 * @param alphaTolerance the tolerance of the alpha channel
+		 * @param redTolerance the tolerance of the red channel
+		 * @param greenTolerance the tolerance of the green channel
+		 * @param blueTolerance the tolerance of the blue channel
+		 * 
+		 * */
+		public PaletteBackground(int[] colors, int alphaTolerance, int redTolerance, int greenTolerance, int blueTolerance) {
+			
+			super(first(colors));
+			
+			words = (colors.length + 63) / 64;
+			
+			alpha = table(colors, 24, alphaTolerance, words);
+			red = table(colors, 16, redTolerance, words);
+			green = table(colors, 8, greenTolerance, words);
+			blue = table(colors, 0, blueTolerance, words);
+		}
+		
+		private static int first(int[] colors) {
+			
+			if(colors == null || colors.length == 0) {
+				throw new IllegalArgumentException("There must be at least one color");
+			}
+			
+			return colors[0];
+		}
+		
+		private static long[] table(int[] colors, int shift, int tolerance, int words) {
+			
+			if(tolerance < 0) {
+				throw new IllegalArgumentException("Tolerance is < 0");
+			}
+			
+			// Cada entrada tiene 'words' longs, un bit por color
+			final long[] table = new long[256 * words];
+			
+			for(int i = 0;i < colors.length;i++) {
+				
+				final int channel = colors[i] >>> shift & 0xFF;
+				final int from = Math.max(0, channel - tolerance);
+				final int to = Math.min(255, channel + tolerance);
+				
+				for(int v = from;v <= to;v++) {
+					table[v * words + i / 64] |= 1L << i;
+				}
+				
+			}
+			
+			return table;
+		}
+		
+		@Override
+		public boolean contains(int value) {
+			
+			final int a = (value >>> 24) * words;
+			final int r = (value >>> 16 & 0xFF) * words;
+			final int g = (value >>> 8 & 0xFF) * words;
+			final int b = (value & 0xFF) * words;
+			
+			for(int w = 0;w < words;w++) {
+				if((alpha[a+w] & red[r+w] & green[g+w] & blue[b+w]) != 0) {
+					return true;
+				}
+			}
+			
+			return false;
 		}
 		
-	}
-	
-	private static final class MutableInteger {
-		int value;
 	}
 
 }
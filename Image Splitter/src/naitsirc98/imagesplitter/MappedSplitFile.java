@@ -0,0 +1,243 @@
+package naitsirc98.imagesplitter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read only view of a file written by {@link SplitFile}.
+ *
+ * <p>The file is memory mapped and only the header is read when it is opened, so opening it costs the same no matter
+ * how many subimages it has. Bounds are decoded on demand, one block at a time, straight from the mapped bytes, without
+ * creating any {@link ImageBounds}. Use {@link #toList()} if you need a {@link SplittedImageList}.</p>
+ *
+ * <p>The last decoded block is cached, so reading the subimages in order only decodes each block once. Because of that
+ * cache, instances of this class must not be shared between threads.</p>
+ *
+ * */
+public final class MappedSplitFile {
+
+	/**
+	 * Memory maps the given file.
+	 *
+	 * @param file the path of the file
+	 *
+	 * @return the mapped file
+	 *
+	 * @throws IOException if an I/O error occurs or the file is not a valid split file
+	 *
+	 * */
+	public static MappedSplitFile open(Path file) throws IOException {
+
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new MappedSplitFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+
+	}
+
+	private static final int X = 0, Y = 1, WIDTH = 2, HEIGHT = 3, ROW = 4, COLUMN = 5, FIELDS = 6;
+
+	private final ByteBuffer buffer;
+	private final int count;
+	private final int blockSize;
+	private final int blocks;
+	private final long sourceHash;
+	private final int data;
+
+	private final int[] cache;
+	private int cachedBlock = -1;
+	private int position;
+
+	/**
+	 * Constructs a new MappedSplitFile object over the given bytes, from their current position.
+	 *
+	 * @param bytes the contents of a split file
+	 *
+	 * @throws IOException if the bytes are not a valid split file
+	 *
+	 * */
+	public MappedSplitFile(ByteBuffer bytes) throws IOException {
+
+		buffer = bytes.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+		if(buffer.capacity() < SplitFile.HEADER_SIZE || buffer.getInt(0) != SplitFile.MAGIC) {
+			throw new IOException("Not a split file");
+		}
+
+		final int version = buffer.getShort(4) & 0xFFFF;
+
+		if(version != SplitFile.VERSION) {
+			throw new IOException("Unsupported split file version: " + version);
+		}
+
+		blockSize = buffer.getShort(6) & 0xFFFF;
+		count = buffer.getInt(8);
+		blocks = buffer.getInt(12);
+		sourceHash = buffer.getLong(16);
+		data = SplitFile.HEADER_SIZE + (blocks + 1) * 4;
+
+		if(count < 0 || blockSize == 0 || blocks != (count + blockSize - 1) / blockSize || data > buffer.capacity()
+				|| data + (long) buffer.getInt(data - 4) > buffer.capacity()) {
+			throw new IOException("Corrupted split file");
+		}
+
+		cache = new int[blockSize * FIELDS];
+	}
+
+	/**
+	 * @return the number of subimages
+	 * */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @return the hash of the image that was split
+	 * */
+	public long getSourceHash() {
+		return sourceHash;
+	}
+
+	/**
+	 * Checks whether this file was written from the given image or not.
+	 *
+	 * @param image the array image
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 *
+	 * @return true if the hash of the image is the stored one, false otherwise
+	 *
+	 * */
+	public boolean matches(int[] image, int width, int height) {
+		return SplitFile.hash(image, width, height) == sourceHash;
+	}
+
+	public int getX(int index) {
+		return field(index, X);
+	}
+
+	public int getY(int index) {
+		return field(index, Y);
+	}
+
+	public int getWidth(int index) {
+		return field(index, WIDTH);
+	}
+
+	public int getHeight(int index) {
+		return field(index, HEIGHT);
+	}
+
+	public int getRow(int index) {
+		return field(index, ROW);
+	}
+
+	public int getColumn(int index) {
+		return field(index, COLUMN);
+	}
+
+	/**
+	 * Copies the x, y, width, height, row and column of a subimage into the given array.
+	 *
+	 * @param index the index of the subimage
+	 * @param dst an array of at least 6 elements
+	 *
+	 * */
+	public void get(int index, int[] dst) {
+		System.arraycopy(cache, decode(index), dst, 0, FIELDS);
+	}
+
+	/**
+	 * Creates a {@link SplittedImageList} with all the subimages of this file.
+	 *
+	 * @return the list of the subimage bounds
+	 *
+	 * */
+	public SplittedImageList toList() {
+
+		SplittedImageList sprites = new SplittedImageList(count);
+
+		for(int i = 0;i < count;i++) {
+
+			final int k = decode(i);
+
+			ImageBounds b = new ImageBounds(cache[k+X], cache[k+Y], cache[k+WIDTH], cache[k+HEIGHT]);
+
+			b.row = cache[k+ROW];
+			b.column = cache[k+COLUMN];
+
+			sprites.add(b);
+		}
+
+		return sprites;
+	}
+
+	private int field(int index, int field) {
+		return cache[decode(index) + field];
+	}
+
+	private int decode(int index) {
+
+		if(index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+		}
+
+		final int block = index / blockSize;
+
+		if(block != cachedBlock) {
+			decodeBlock(block);
+		}
+
+		return (index % blockSize) * FIELDS;
+	}
+
+	private void decodeBlock(int block) {
+
+		position = data + buffer.getInt(SplitFile.HEADER_SIZE + block * 4);
+
+		final int n = Math.min(blockSize, count - block * blockSize);
+
+		int x = 0, y = 0, row = 0, column = 0;
+
+		for(int i = 0, k = 0;i < n;i++, k += FIELDS) {
+
+			x += SplitFile.unzigzag(varint());
+			y += SplitFile.unzigzag(varint());
+
+			cache[k+X] = x;
+			cache[k+Y] = y;
+			cache[k+WIDTH] = varint();
+			cache[k+HEIGHT] = varint();
+
+			row += SplitFile.unzigzag(varint());
+			column += SplitFile.unzigzag(varint());
+
+			cache[k+ROW] = row;
+			cache[k+COLUMN] = column;
+		}
+
+		cachedBlock = block;
+	}
+
+	private int varint() {
+
+		int value = 0;
+
+		for(int shift = 0;;shift += 7) {
+
+			final byte b = buffer.get(position++);
+
+			value |= (b & 0x7F) << shift;
+
+			if(b >= 0) {
+				return value;
+			}
+
+		}
+
+	}
+
+}
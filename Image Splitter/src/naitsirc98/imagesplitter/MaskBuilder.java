@@ -0,0 +1,109 @@
+package naitsirc98.imagesplitter;
+
+import java.util.Arrays;
+
+/**
+ * Groups the spans recorded by a {@link ComponentLabeler} into one {@link OccupancyMask} per component, after the
+ * particles have been merged.
+ *
+ * <p>Spans are distributed with a counting sort by component. Since they were recorded in the order of the image, each
+ * component gets its spans already sorted by row and then by column.</p>
+ *
+ * <p>Buffers grow as needed and are reused between calls, so instances of this class must not be shared between threads.</p>
+ *
+ * */
+final class MaskBuilder {
+
+	private int[] start = new int[0];
+	private int[] spans = new int[0];
+	private int[] components = new int[0];
+
+	/**
+	 * Groups the spans of the labeler by the components they were merged into.
+	 *
+	 * @param labeler the labeler, after {@code end} is called
+	 * @param clusterer the clusterer, after {@code cluster} is called
+	 * @param count the number of components after merging
+	 *
+	 * */
+	void group(ComponentLabeler labeler, ParticleClusterer clusterer, int count) {
+
+		final int spanCount = labeler.spanCount;
+
+		if(start.length < count + 1) {
+			start = new int[Math.max(count + 1, start.length * 2)];
+		}
+
+		if(spans.length < spanCount) {
+			spans = new int[Math.max(spanCount, spans.length * 2)];
+			components = new int[spans.length];
+		}
+
+		Arrays.fill(start, 0, count + 1, 0);
+
+		for(int i = 0;i < spanCount;i++) {
+			final int c = clusterer.target(labeler.spanComponent(i));
+			components[i] = c;
+			start[c+1]++;
+		}
+
+		for(int c = 0;c < count;c++) {
+			start[c+1] += start[c];
+		}
+
+		// start[c] se usa como cursor y queda apuntando al final de c, que es el inicio de c+1
+		for(int i = 0;i < spanCount;i++) {
+			spans[start[components[i]]++] = i;
+		}
+
+		for(int c = count;c > 0;c--) {
+			start[c] = start[c-1];
+		}
+
+		start[0] = 0;
+	}
+
+	/**
+	 * Creates the mask of a component.
+	 *
+	 * @param labeler the labeler the spans were grouped from
+	 * @param component the index of the component after merging
+	 * @param minX the first column of the component
+	 * @param minY the first row of the component
+	 * @param maxX the last column of the component
+	 * @param maxY the last row of the component
+	 *
+	 * @return the mask of the component
+	 *
+	 * */
+	OccupancyMask build(ComponentLabeler labeler, int component, int minX, int minY, int maxX, int maxY) {
+
+		final int from = start[component];
+		final int to = start[component+1];
+
+		final int[] rows = new int[maxY - minY + 2];
+		final int[] data = new int[(to - from) * 2];
+
+		int row = 0;
+
+		for(int k = from;k < to;k++) {
+
+			final int span = spans[k];
+			final int y = labeler.spanY[span] - minY;
+
+			while(row <= y) {
+				rows[row++] = (k - from) * 2;
+			}
+
+			data[(k-from)*2] = labeler.spanStart[span] - minX;
+			data[(k-from)*2+1] = labeler.spanEnd[span] - minX;
+		}
+
+		while(row < rows.length) {
+			rows[row++] = data.length;
+		}
+
+		return new OccupancyMask(minX, minY, maxX - minX + 1, rows, data);
+	}
+
+}
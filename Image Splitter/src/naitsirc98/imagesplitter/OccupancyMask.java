@@ -0,0 +1,299 @@
+package naitsirc98.imagesplitter;
+
+import java.util.Arrays;
+
+/**
+ * The exact set of non background pixels of a subimage, stored as run-length spans.
+ *
+ * <p>Each row of the subimage has a sorted list of spans of consecutive pixels. A span is stored as the first and the
+ * last pixel plus one, relative to the x coordinate of the mask. Coordinates given to the query methods are relative to
+ * the original image, like the ones of {@link ImageBounds}.</p>
+ *
+ * <p>Masks are recorded by the automatic split while it looks for the subimages, when enabled with
+ * {@link SplitConfig#withMasks(boolean)}, so the pixels never have to be classified again. Objects of this class can not
+ * be modified.</p>
+ *
+ * */
+public final class OccupancyMask {
+
+	/**
+	 * Combines two or more masks into one. Original instances are not modified.
+	 *
+	 * @param masks masks to combine
+	 *
+	 * @return the result mask
+	 *
+	 * */
+	public static OccupancyMask union(OccupancyMask... masks) {
+
+		if(masks == null || masks.length == 0) {
+			throw new IllegalArgumentException();
+		}
+
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		int spanCount = 0;
+
+		for(OccupancyMask mask : masks) {
+			minX = Math.min(minX, mask.x);
+			minY = Math.min(minY, mask.y);
+			maxX = Math.max(maxX, mask.x + mask.width);
+			maxY = Math.max(maxY, mask.y + mask.height());
+			spanCount += mask.spanCount();
+		}
+
+		final int height = maxY - minY;
+
+		final int[] rows = new int[height + 1];
+		final int[] spans = new int[spanCount * 2];
+		final long[] row = new long[spanCount];
+
+		int size = 0;
+
+		for(int r = 0;r < height;r++) {
+
+			final int y = minY + r;
+
+			int n = 0;
+
+			for(OccupancyMask mask : masks) {
+
+				final int my = y - mask.y;
+
+				if(my < 0 || my >= mask.height()) {
+					continue;
+				}
+
+				for(int k = mask.rows[my];k < mask.rows[my+1];k += 2) {
+					final int start = mask.spans[k] + mask.x - minX;
+					final int end = mask.spans[k+1] + mask.x - minX;
+					row[n++] = (long) start << 32 | end;
+				}
+
+			}
+
+			Arrays.sort(row, 0, n);
+
+			rows[r] = size;
+
+			for(int k = 0;k < n;k++) {
+
+				final int start = (int) (row[k] >>> 32);
+				final int end = (int) row[k];
+
+				// Se unen los spans que se solapan o se tocan
+				if(size > rows[r] && start <= spans[size-1]) {
+					spans[size-1] = Math.max(spans[size-1], end);
+				} else {
+					spans[size++] = start;
+					spans[size++] = end;
+				}
+
+			}
+
+		}
+
+		rows[height] = size;
+
+		return new OccupancyMask(minX, minY, maxX - minX, rows, Arrays.copyOf(spans, size));
+	}
+
+	private final int x;
+	private final int y;
+	private final int width;
+	private final int[] rows;
+	private final int[] spans;
+
+	OccupancyMask(int x, int y, int width, int[] rows, int[] spans) {
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.rows = rows;
+		this.spans = spans;
+	}
+
+	/**
+	 * Checks whether the given pixel is occupied or not.
+	 *
+	 * @param x coordinate x
+	 * @param y coordinate y
+	 *
+	 * @return true if the pixel belongs to the subimage, false otherwise
+	 *
+	 * */
+	public boolean contains(int x, int y) {
+
+		final int r = y - this.y;
+
+		if(r < 0 || r >= height() || x < this.x || x >= this.x + width) {
+			return false;
+		}
+
+		final int mx = x - this.x;
+
+		// Busqueda binaria del ultimo span que empieza antes o en mx
+		int lo = rows[r] / 2;
+		int hi = rows[r+1] / 2 - 1;
+
+		while(lo <= hi) {
+
+			final int mid = (lo + hi) >>> 1;
+
+			if(spans[mid*2] <= mx) {
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+
+		}
+
+		return hi >= rows[r] / 2 && mx < spans[hi*2+1];
+	}
+
+	/**
+	 * Checks whether this mask and the given one have any pixel in common.
+	 *
+	 * @param other another mask
+	 *
+	 * @return true if they overlap, false otherwise
+	 *
+	 * */
+	public boolean overlaps(OccupancyMask other) {
+		return overlaps(other, 0, 0);
+	}
+
+	/**
+	 * Checks whether this mask and the given one, moved by the given offset, have any pixel in common.
+	 *
+	 * @param other another mask
+	 * @param dx the horizontal offset of the other mask
+	 * @param dy the vertical offset of the other mask
+	 *
+	 * @return true if they overlap, false otherwise
+	 *
+	 * */
+	public boolean overlaps(OccupancyMask other, int dx, int dy) {
+
+		final int ox = other.x + dx;
+		final int oy = other.y + dy;
+
+		final int fromY = Math.max(y, oy);
+		final int toY = Math.min(y + height(), oy + other.height());
+
+		if(fromY >= toY || Math.max(x, ox) >= Math.min(x + width, ox + other.width)) {
+			return false;
+		}
+
+		// Los spans de ambos se pasan a coordenadas de esta mascara
+		final int shift = ox - x;
+
+		for(int py = fromY;py < toY;py++) {
+
+			int i = rows[py - y];
+			final int iEnd = rows[py - y + 1];
+
+			int j = other.rows[py - oy];
+			final int jEnd = other.rows[py - oy + 1];
+
+			while(i < iEnd && j < jEnd) {
+
+				final int start = other.spans[j] + shift;
+				final int end = other.spans[j+1] + shift;
+
+				if(spans[i+1] <= start) {
+					i += 2;
+				} else if(end <= spans[i]) {
+					j += 2;
+				} else {
+					return true;
+				}
+
+			}
+
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return the number of occupied pixels
+	 * */
+	public int getPixelCount() {
+
+		int count = 0;
+
+		for(int k = 0;k < spans.length;k += 2) {
+			count += spans[k+1] - spans[k];
+		}
+
+		return count;
+	}
+
+	/**
+	 * Copies the spans of a row into the given array, as pairs of first pixel and last pixel plus one, relative to
+	 * the original image.
+	 *
+	 * @param y the row, relative to the original image
+	 * @param dst the destination array, or null to only count them
+	 *
+	 * @return the number of spans of the row
+	 *
+	 * */
+	public int getSpans(int y, int[] dst) {
+
+		final int r = y - this.y;
+
+		if(r < 0 || r >= height()) {
+			return 0;
+		}
+
+		final int from = rows[r];
+		final int to = rows[r+1];
+
+		if(dst != null) {
+			for(int k = from;k < to;k++) {
+				dst[k - from] = spans[k] + x;
+			}
+		}
+
+		return (to - from) / 2;
+	}
+
+	/**
+	 * @return a copy of this mask moved by the given distance, sharing its spans
+	 * */
+	OccupancyMask translate(int dx, int dy) {
+		return new OccupancyMask(x + dx, y + dy, width, rows, spans);
+	}
+
+	public int getX() {
+		return x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height();
+	}
+
+	private int height() {
+		return rows.length - 1;
+	}
+
+	private int spanCount() {
+		return spans.length / 2;
+	}
+
+	@Override
+	public String toString() {
+		return "OccupancyMask [x=" + x + ", y=" + y + ", width=" + width + ", height=" + height()
+				+ ", spans=" + spanCount() + "]";
+	}
+
+}
@@ -0,0 +1,293 @@
+package naitsirc98.imagesplitter;
+
+import java.util.Arrays;
+
+/**
+ * Post-labeling stage that merges particles with the subimages they belong to.
+ *
+ * <p>Components are given as inclusive bounds (first and last pixel of each axis) in the order they were found. Two components
+ * are joined when the distance between their nearest pixels is smaller or equal to {@code particleDistance} and at least one
+ * of them has a size smaller or equal to {@code particleSize}. Joined components are kept in a union-find, and each group is
+ * emitted as the union of the bounds of its members.</p>
+ *
+ * <p>Candidate pairs are found with a uniform grid of columns, as wide as {@code particleDistance} plus the widest particle.
+ * Particles are put in the column of their first pixel with a counting sort, and sorted by y inside each column, so each
+ * component only looks at the particles that are near it on both axes: a binary search in each column it reaches, plus the
+ * candidates inside its band. The cost is O(n log n) even when all the particles are in the same column of a sheet. Groups
+ * do not depend on the order in which pairs are examined, and they are emitted in the order of their first member, so the
+ * same input always gives the same output.</p>
+ *
+ * <p>Buffers grow as needed and are reused between calls, so instances of this class must not be shared between threads.</p>
+ *
+ * */
+final class ParticleClusterer {
+
+	private int[] parent = new int[0];
+	private int[] target = new int[0];
+	private long[] particles = new long[0];
+	private long[] sorted = new long[0];
+	private int[] columns = new int[0];
+
+	/**
+	 * Checks whether particles are merged with the given attributes or not. When they are not, {@code cluster} keeps
+	 * every component as it is.
+	 *
+	 * @param particleSize the maximum size of a particle
+	 * @param particleDistance the maximum distance between a particle and its parent
+	 *
+	 * @return true if particles are merged, false otherwise
+	 *
+	 * */
+	static boolean isEnabled(int particleSize, int particleDistance) {
+		return particleSize > 0 && particleDistance >= 0;
+	}
+
+	/**
+	 * Merges the particles of the given components. The arrays are compacted in place, so the first <i>n</i> elements
+	 * hold the merged bounds, where <i>n</i> is the returned value.
+	 *
+	 * @param count the number of components
+	 * @param minX the first column of each component
+	 * @param minY the first row of each component
+	 * @param maxX the last column of each component
+	 * @param maxY the last row of each component
+	 * @param particleSize the maximum size of a particle
+	 * @param particleDistance the maximum distance between a particle and its parent
+	 *
+	 * @return the number of components after merging
+	 *
+	 * */
+	int cluster(int count, int[] minX, int[] minY, int[] maxX, int[] maxY, int particleSize, int particleDistance) {
+
+		ensureCapacity(count);
+
+		for(int i = 0;i < count;i++) {
+			parent[i] = i;
+		}
+
+		if(isEnabled(particleSize, particleDistance)) {
+			join(count, minX, minY, maxX, maxY, particleSize, particleDistance);
+		}
+
+		return compact(count, minX, minY, maxX, maxY);
+	}
+
+	/**
+	 * Returns the index, after the last call to {@code cluster}, of the group the given component was merged into.
+	 *
+	 * @param component the index of the component before merging
+	 *
+	 * @return the index of its group after merging
+	 *
+	 * */
+	int target(int component) {
+		return target[component];
+	}
+
+	private void join(int count, int[] minX, int[] minY, int[] maxX, int[] maxY, int particleSize, int particleDistance) {
+
+		int particleCount = 0;
+		int maxParticleWidth = 0;
+		int maxParticleHeight = 0;
+		int originX = Integer.MAX_VALUE;
+		int lastX = Integer.MIN_VALUE;
+
+		for(int i = 0;i < count;i++) {
+
+			final long w = maxX[i] - minX[i] + 1;
+			final long h = maxY[i] - minY[i] + 1;
+
+			if(w * h <= particleSize) {
+				particles[particleCount++] = ((long) minY[i] << 32) | i;
+				maxParticleWidth = Math.max(maxParticleWidth, (int) w);
+				maxParticleHeight = Math.max(maxParticleHeight, (int) h);
+				originX = Math.min(originX, minX[i]);
+				lastX = Math.max(lastX, minX[i]);
+			}
+
+		}
+
+		if(particleCount == 0) {
+			return;
+		}
+
+		final long columnWidth = (long) particleDistance + maxParticleWidth;
+		final int columnCount = (int) ((lastX - (long) originX) / columnWidth) + 1;
+
+		group(minX, particleCount, originX, columnWidth, columnCount);
+
+		final long d2 = (long) particleDistance * particleDistance;
+
+		for(int i = 0;i < count;i++) {
+
+			// Una particula a la izquierda o encima de i tiene que empezar como muy pronto aqui para estar a distancia
+			final long fromX = (long) minX[i] - particleDistance - maxParticleWidth + 1;
+			final long toX = (long) maxX[i] + particleDistance;
+			final long fromY = (long) minY[i] - particleDistance - maxParticleHeight + 1;
+			final long toY = (long) maxY[i] + particleDistance;
+
+			final long first = Math.max(0, Math.floorDiv(fromX - originX, columnWidth));
+			final long last = Math.min(columnCount - 1, Math.floorDiv(toX - originX, columnWidth));
+
+			for(int c = (int) first;c <= last;c++) {
+
+				for(int k = lowerBound(columns[c], columns[c+1], fromY);k < columns[c+1];k++) {
+
+					final long key = sorted[k];
+
+					if((key >> 32) > toY) {
+						break;
+					}
+
+					final int p = (int) key;
+
+					if(p == i) {
+						continue;
+					}
+
+					final long dx = Math.max(0, Math.max((long) minX[p] - maxX[i], (long) minX[i] - maxX[p]));
+					final long dy = Math.max(0, Math.max((long) minY[p] - maxY[i], (long) minY[i] - maxY[p]));
+
+					if(dx * dx + dy * dy <= d2) {
+						union(i, p);
+					}
+
+				}
+
+			}
+
+		}
+
+	}
+
+	/**
+	 * Puts the particles in their columns, sorted by y and then by index inside each column.
+	 * */
+	private void group(int[] minX, int particleCount, int originX, long columnWidth, int columnCount) {
+
+		if(columns.length < columnCount + 1) {
+			columns = new int[Math.max(columnCount + 1, columns.length * 2)];
+		}
+
+		Arrays.fill(columns, 0, columnCount + 1, 0);
+
+		for(int k = 0;k < particleCount;k++) {
+			columns[column(minX, particles[k], originX, columnWidth) + 1]++;
+		}
+
+		for(int c = 0;c < columnCount;c++) {
+			columns[c+1] += columns[c];
+		}
+
+		// columns[c] se usa como cursor y queda apuntando al inicio de c+1, despues se desplaza una posicion
+		for(int k = 0;k < particleCount;k++) {
+			sorted[columns[column(minX, particles[k], originX, columnWidth)]++] = particles[k];
+		}
+
+		for(int c = columnCount;c > 0;c--) {
+			columns[c] = columns[c-1];
+		}
+
+		columns[0] = 0;
+
+		for(int c = 0;c < columnCount;c++) {
+			Arrays.sort(sorted, columns[c], columns[c+1]);
+		}
+
+	}
+
+	private static int column(int[] minX, long particle, int originX, long columnWidth) {
+		return (int) ((minX[(int) particle] - (long) originX) / columnWidth);
+	}
+
+	private int compact(int count, int[] minX, int[] minY, int[] maxX, int[] maxY) {
+
+		int size = 0;
+
+		for(int i = 0;i < count;i++) {
+
+			final int root = find(i);
+
+			if(root == i) {
+
+				// Los grupos salen en el orden de su primer miembro, que siempre es la raiz
+				minX[size] = minX[i];
+				minY[size] = minY[i];
+				maxX[size] = maxX[i];
+				maxY[size] = maxY[i];
+				target[i] = size++;
+
+			} else {
+
+				final int t = target[root];
+
+				minX[t] = Math.min(minX[t], minX[i]);
+				minY[t] = Math.min(minY[t], minY[i]);
+				maxX[t] = Math.max(maxX[t], maxX[i]);
+				maxY[t] = Math.max(maxY[t], maxY[i]);
+				target[i] = t;
+
+			}
+
+		}
+
+		return size;
+	}
+
+	private int lowerBound(int from, int to, long y) {
+
+		int lo = from;
+		int hi = to;
+
+		while(lo < hi) {
+
+			final int mid = (lo + hi) >>> 1;
+
+			if((sorted[mid] >> 32) < y) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+
+		}
+
+		return lo;
+	}
+
+	private int find(int i) {
+
+		while(parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+
+		return i;
+	}
+
+	private void union(int a, int b) {
+
+		final int ra = find(a);
+		final int rb = find(b);
+
+		// La raiz es siempre el menor indice para que el resultado sea determinista
+		if(ra < rb) {
+			parent[rb] = ra;
+		} else if(rb < ra) {
+			parent[ra] = rb;
+		}
+
+	}
+
+	private void ensureCapacity(int count) {
+
+		if(parent.length < count) {
+			final int capacity = Math.max(count, parent.length * 2);
+			parent = new int[capacity];
+			target = new int[capacity];
+			particles = new long[capacity];
+			sorted = new long[capacity];
+		}
+
+	}
+
+}
@@ -0,0 +1,117 @@
+package naitsirc98.imagesplitter;
+
+/**
+ * Statistics of the non background pixels of a subimage: how many there are, where their mass center is and what their
+ * mean color is.
+ *
+ * <p>They are accumulated by the automatic split while it looks for the subimages, when enabled with
+ * {@link SplitConfig#withStatistics(boolean)}, so the subimages do not have to be read again. Only sums are kept, so
+ * the statistics of several subimages can be combined exactly. Objects of this class can not be modified.</p>
+ *
+ * */
+public final class PixelStatistics {
+
+	/**
+	 * Combines the statistics of two or more subimages into one. Original instances are not modified.
+	 *
+	 * @param statistics statistics to combine
+	 *
+	 * @return the result statistics
+	 *
+	 * */
+	public static PixelStatistics union(PixelStatistics... statistics) {
+
+		if(statistics == null || statistics.length == 0) {
+			throw new IllegalArgumentException();
+		}
+
+		final long[] sums = new long[ComponentLabeler.STATS];
+
+		for(PixelStatistics s : statistics) {
+			for(int k = 0;k < sums.length;k++) {
+				sums[k] += s.sums[k];
+			}
+		}
+
+		return new PixelStatistics(sums);
+	}
+
+	private final long[] sums;
+
+	/**
+	 * @param sums the sums, in the order of {@link ComponentLabeler#STATS}. The array is not copied
+	 * */
+	PixelStatistics(long[] sums) {
+		this.sums = sums;
+	}
+
+	/**
+	 * @return the number of non background pixels
+	 * */
+	public long getPixelCount() {
+		return sums[ComponentLabeler.PIXELS];
+	}
+
+	/**
+	 * Returns the mean x coordinate of the pixels, relative to the original image. For example, a subimage made of
+	 * the pixels (4, 0) and (5, 0) has its mass center at x = 4.5.
+	 *
+	 * @return the x coordinate of the mass center, or NaN if there are no pixels
+	 *
+	 * */
+	public double getMassCenterX() {
+		return (double) sums[ComponentLabeler.SUM_X] / getPixelCount();
+	}
+
+	/**
+	 * Returns the mean y coordinate of the pixels, relative to the original image.
+	 *
+	 * @return the y coordinate of the mass center, or NaN if there are no pixels
+	 *
+	 * */
+	public double getMassCenterY() {
+		return (double) sums[ComponentLabeler.SUM_Y] / getPixelCount();
+	}
+
+	/**
+	 * Returns the mean color of the pixels, in ARGB format. Each channel is averaged on its own and rounded.
+	 *
+	 * @return the mean color, or 0 if there are no pixels
+	 *
+	 * */
+	public int getMeanColor() {
+
+		final long pixels = getPixelCount();
+
+		if(pixels == 0) {
+			return 0;
+		}
+
+		final int a = (int) ((sums[ComponentLabeler.SUM_A] + pixels / 2) / pixels);
+		final int r = (int) ((sums[ComponentLabeler.SUM_R] + pixels / 2) / pixels);
+		final int g = (int) ((sums[ComponentLabeler.SUM_G] + pixels / 2) / pixels);
+		final int b = (int) ((sums[ComponentLabeler.SUM_B] + pixels / 2) / pixels);
+
+		return a << 24 | r << 16 | g << 8 | b;
+	}
+
+	/**
+	 * @return a copy of these statistics for the same pixels moved by the given distance
+	 * */
+	PixelStatistics translate(int dx, int dy) {
+
+		final long[] moved = sums.clone();
+
+		moved[ComponentLabeler.SUM_X] += dx * getPixelCount();
+		moved[ComponentLabeler.SUM_Y] += dy * getPixelCount();
+
+		return new PixelStatistics(moved);
+	}
+
+	@Override
+	public String toString() {
+		return "PixelStatistics [pixels=" + getPixelCount() + ", massCenterX=" + getMassCenterX()
+				+ ", massCenterY=" + getMassCenterY() + ", meanColor=" + Integer.toHexString(getMeanColor()) + "]";
+	}
+
+}
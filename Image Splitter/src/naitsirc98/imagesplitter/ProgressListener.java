@@ -0,0 +1,22 @@
+package naitsirc98.imagesplitter;
+
+/**
+ * Receives the progress of an automatic split.
+ *
+ * <p>It is called from the thread that is splitting, so it should return quickly.</p>
+ *
+ * */
+@FunctionalInterface
+public interface ProgressListener {
+
+	/**
+	 * Called after some rows of the image have been scanned, and once more when the scan finishes.
+	 *
+	 * @param rows the number of rows scanned so far
+	 * @param totalRows the height of the image
+	 * @param components the number of subimages finished so far, before merging particles
+	 *
+	 * */
+	void progress(int rows, int totalRows, int components);
+
+}
@@ -0,0 +1,468 @@
+package naitsirc98.imagesplitter;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * A read only spatial index over a list of {@link ImageBounds}, to find quickly which subimages are under a point,
+ * which ones intersect an area, or which ones are the nearest to a point.
+ *
+ * <p>It is a packed static R-tree: subimages are sorted along a Hilbert curve by their centers, and then grouped 16
+ * at a time into the nodes of each level, up to the root. All nodes are stored in primitive arrays, so building the
+ * index takes O(n log n) and queries visit O(log n) nodes plus the results. It is cheap enough to be built again after
+ * the list is modified, for example after a {@code blend}.</p>
+ *
+ * <p>Queries return the indices the subimages had in the list when the index was built. Bounds are treated as half open:
+ * a subimage contains a pixel if {@code x <= px < x + width} and {@code y <= py < y + height}, like
+ * {@link ImageBounds#contains(int, int)}. Objects of this class can not be modified, so they can be queried from any
+ * number of threads.</p>
+ *
+ * */
+public final class SpatialIndex {
+
+	private static final int NODE_SIZE = 16;
+	private static final int HILBERT_SIDE = 1 << 16;
+
+	private final int size;
+	private final int[] boxes;
+	private final int[] indices;
+	private final int[] levels;
+
+	/**
+	 * Builds the index of the given subimages.
+	 *
+	 * @param sprites the list of subimages
+	 *
+	 * */
+	public SpatialIndex(List<ImageBounds> sprites) {
+
+		size = sprites.size();
+
+		if(size == 0) {
+			boxes = new int[0];
+			indices = new int[0];
+			levels = new int[] {0};
+			return;
+		}
+
+		// Cuantos nodos hay en cada nivel, de las hojas a la raiz
+		int[] bounds = new int[8];
+		int levelCount = 0;
+		int nodes = size;
+		int n = size;
+
+		bounds[levelCount++] = nodes;
+
+		do {
+			n = (n + NODE_SIZE - 1) / NODE_SIZE;
+			nodes += n;
+			if(levelCount == bounds.length) {
+				bounds = Arrays.copyOf(bounds, levelCount * 2);
+			}
+			bounds[levelCount++] = nodes;
+		} while(n != 1);
+
+		levels = Arrays.copyOf(bounds, levelCount);
+		boxes = new int[nodes * 4];
+		indices = new int[nodes];
+
+		sortItems(sprites);
+
+		for(int level = 0;level < levels.length - 1;level++) {
+
+			final int start = level == 0 ? 0 : levels[level-1];
+			final int end = levels[level];
+
+			int node = end;
+
+			for(int first = start;first < end;first += NODE_SIZE, node++) {
+
+				final int last = Math.min(first + NODE_SIZE, end);
+
+				int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+				int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+
+				for(int c = first;c < last;c++) {
+					minX = Math.min(minX, boxes[c*4]);
+					minY = Math.min(minY, boxes[c*4+1]);
+					maxX = Math.max(maxX, boxes[c*4+2]);
+					maxY = Math.max(maxY, boxes[c*4+3]);
+				}
+
+				boxes[node*4] = minX;
+				boxes[node*4+1] = minY;
+				boxes[node*4+2] = maxX;
+				boxes[node*4+3] = maxY;
+				indices[node] = first;
+			}
+
+		}
+
+	}
+
+	/**
+	 * @return the number of subimages in this index
+	 * */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Finds the subimage under the given point. If there are more than one, the one with the lowest index is returned.
+	 *
+	 * @param x coordinate x
+	 * @param y coordinate y
+	 *
+	 * @return the index of the subimage, or -1 if there is none
+	 *
+	 * */
+	public int find(int x, int y) {
+
+		final int[] result = {-1};
+
+		findAll(x, y, i -> {
+			if(result[0] < 0 || i < result[0]) {
+				result[0] = i;
+			}
+		});
+
+		return result[0];
+	}
+
+	/**
+	 * Finds all the subimages under the given point, in no particular order.
+	 *
+	 * @param x coordinate x
+	 * @param y coordinate y
+	 * @param action the action to perform with the index of each subimage found
+	 *
+	 * */
+	public void findAll(int x, int y, IntConsumer action) {
+		search(x, y, x+1, y+1, action);
+	}
+
+	/**
+	 * Finds all the subimages that intersect the given area, in no particular order.
+	 *
+	 * @param x the x coordinate of the area
+	 * @param y the y coordinate of the area
+	 * @param width the width of the area
+	 * @param height the height of the area
+	 * @param action the action to perform with the index of each subimage found
+	 *
+	 * */
+	public void intersecting(int x, int y, int width, int height, IntConsumer action) {
+
+		if(width > 0 && height > 0) {
+			search(x, y, x+width, y+height, action);
+		}
+
+	}
+
+	/**
+	 * Finds all the subimages that intersect the given area.
+	 *
+	 * @param x the x coordinate of the area
+	 * @param y the y coordinate of the area
+	 * @param width the width of the area
+	 * @param height the height of the area
+	 *
+	 * @return the indices of the subimages found, sorted
+	 *
+	 * */
+	public int[] intersecting(int x, int y, int width, int height) {
+
+		final IntList result = new IntList();
+
+		intersecting(x, y, width, height, result);
+
+		final int[] array = Arrays.copyOf(result.values, result.size);
+
+		Arrays.sort(array);
+
+		return array;
+	}
+
+	/**
+	 * Finds the k subimages nearest to the given point. The distance to a subimage is the distance to its nearest
+	 * pixel, so it is 0 for the subimages under the point. Ties are always broken the same way.
+	 *
+	 * @param x coordinate x
+	 * @param y coordinate y
+	 * @param k the maximum number of subimages to find
+	 *
+	 * @return the indices of the subimages found, from the nearest to the farthest
+	 *
+	 * */
+	public int[] nearest(int x, int y, int k) {
+
+		k = Math.min(k, size);
+
+		if(k <= 0) {
+			return new int[0];
+		}
+
+		final int[] result = new int[k];
+		final NodeQueue queue = new NodeQueue();
+
+		int found = 0;
+
+		queue.push(0, boxes.length / 4 - 1, levels.length - 1);
+
+		while(found < k && queue.size > 0) {
+
+			final int node = queue.node[0];
+			final int level = queue.level[0];
+
+			queue.pop();
+
+			if(level == 0) {
+				result[found++] = indices[node];
+				continue;
+			}
+
+			final int end = levels[level-1];
+			final int last = Math.min(indices[node] + NODE_SIZE, end);
+
+			for(int c = indices[node];c < last;c++) {
+				queue.push(distance(c, x, y), c, level - 1);
+			}
+
+		}
+
+		return result;
+	}
+
+	private void search(int minX, int minY, int maxX, int maxY, IntConsumer action) {
+
+		if(size == 0) {
+			return;
+		}
+
+		// Como mucho se apilan NODE_SIZE - 1 hermanos por nivel mas el nodo actual
+		final int[] stack = new int[levels.length * NODE_SIZE * 2];
+		int top = 0;
+
+		stack[top++] = boxes.length / 4 - 1;
+		stack[top++] = levels.length - 1;
+
+		while(top > 0) {
+
+			final int level = stack[--top];
+			final int node = stack[--top];
+
+			final int end = levels[level-1];
+			final int last = Math.min(indices[node] + NODE_SIZE, end);
+
+			for(int c = indices[node];c < last;c++) {
+
+				final int b = c * 4;
+
+				if(boxes[b] >= maxX || boxes[b+1] >= maxY || boxes[b+2] <= minX || boxes[b+3] <= minY) {
+					continue;
+				}
+
+				if(level == 1) {
+					action.accept(indices[c]);
+				} else {
+					stack[top++] = c;
+					stack[top++] = level - 1;
+				}
+
+			}
+
+		}
+
+	}
+
+	private double distance(int node, int x, int y) {
+
+		final int b = node * 4;
+
+		final double dx = Math.max(0, Math.max((double) boxes[b] - x, (double) x - (boxes[b+2] - 1)));
+		final double dy = Math.max(0, Math.max((double) boxes[b+1] - y, (double) y - (boxes[b+3] - 1)));
+
+		return dx * dx + dy * dy;
+	}
+
+	private void sortItems(List<ImageBounds> sprites) {
+
+		long minCX = Long.MAX_VALUE, minCY = Long.MAX_VALUE;
+		long maxCX = Long.MIN_VALUE, maxCY = Long.MIN_VALUE;
+
+		// Centros al doble para no perder la mitad
+		for(int i = 0;i < size;i++) {
+
+			final ImageBounds b = sprites.get(i);
+
+			final long cx = 2L * b.x + b.width;
+			final long cy = 2L * b.y + b.height;
+
+			minCX = Math.min(minCX, cx);
+			minCY = Math.min(minCY, cy);
+			maxCX = Math.max(maxCX, cx);
+			maxCY = Math.max(maxCY, cy);
+		}
+
+		final long spanX = Math.max(1, maxCX - minCX);
+		final long spanY = Math.max(1, maxCY - minCY);
+
+		final long[] keys = new long[size];
+
+		for(int i = 0;i < size;i++) {
+
+			final ImageBounds b = sprites.get(i);
+
+			final int hx = (int) ((2L * b.x + b.width - minCX) * (HILBERT_SIDE - 1) / spanX);
+			final int hy = (int) ((2L * b.y + b.height - minCY) * (HILBERT_SIDE - 1) / spanY);
+
+			keys[i] = hilbert(hx, hy) << 31 | i;
+		}
+
+		Arrays.sort(keys);
+
+		for(int k = 0;k < size;k++) {
+
+			final int i = (int) (keys[k] & 0x7FFFFFFF);
+			final ImageBounds b = sprites.get(i);
+
+			boxes[k*4] = b.x;
+			boxes[k*4+1] = b.y;
+			boxes[k*4+2] = b.x + b.width;
+			boxes[k*4+3] = b.y + b.height;
+			indices[k] = i;
+		}
+
+	}
+
+	private static long hilbert(int x, int y) {
+
+		long d = 0;
+
+		for(int s = HILBERT_SIDE / 2;s > 0;s /= 2) {
+
+			final int rx = (x & s) > 0 ? 1 : 0;
+			final int ry = (y & s) > 0 ? 1 : 0;
+
+			d += (long) s * s * ((3 * rx) ^ ry);
+
+			if(ry == 0) {
+
+				if(rx == 1) {
+					x = HILBERT_SIDE - 1 - x;
+					y = HILBERT_SIDE - 1 - y;
+				}
+
+				final int t = x;
+				x = y;
+				y = t;
+			}
+
+		}
+
+		return d;
+	}
+
+	private static final class IntList implements IntConsumer {
+
+		int[] values = new int[16];
+		int size;
+
+		@Override
+		public void accept(int value) {
+
+			if(size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+
+			values[size++] = value;
+		}
+
+	}
+
+	/**
+	 * Binary min heap of nodes by distance, and then by position, so ties are always broken the same way.
+	 * */
+	private static final class NodeQueue {
+
+		double[] distance = new double[64];
+		int[] node = new int[64];
+		int[] level = new int[64];
+		int size;
+
+		void push(double d, int n, int l) {
+
+			if(size == node.length) {
+				distance = Arrays.copyOf(distance, size * 2);
+				node = Arrays.copyOf(node, size * 2);
+				level = Arrays.copyOf(level, size * 2);
+			}
+
+			int i = size++;
+
+			while(i > 0) {
+
+				final int parent = (i - 1) / 2;
+
+				if(!less(d, n, distance[parent], node[parent])) {
+					break;
+				}
+
+				set(i, distance[parent], node[parent], level[parent]);
+				i = parent;
+			}
+
+			set(i, d, n, l);
+		}
+
+		void pop() {
+
+			final int last = --size;
+
+			if(last == 0) {
+				return;
+			}
+
+			final double d = distance[last];
+			final int n = node[last];
+			final int l = level[last];
+
+			int i = 0;
+
+			while(true) {
+
+				int child = i * 2 + 1;
+
+				if(child >= size) {
+					break;
+				}
+
+				if(child + 1 < size && less(distance[child+1], node[child+1], distance[child], node[child])) {
+					child++;
+				}
+
+				if(!less(distance[child], node[child], d, n)) {
+					break;
+				}
+
+				set(i, distance[child], node[child], level[child]);
+				i = child;
+			}
+
+			set(i, d, n, l);
+		}
+
+		private void set(int i, double d, int n, int l) {
+			distance[i] = d;
+			node[i] = n;
+			level[i] = l;
+		}
+
+		private static boolean less(double d1, int n1, double d2, int n2) {
+			return d1 < d2 || (d1 == d2 && n1 < n2);
+		}
+
+	}
+
+}
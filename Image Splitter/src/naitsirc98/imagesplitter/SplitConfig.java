@@ -0,0 +1,167 @@
+package naitsirc98.imagesplitter;
+
+import naitsirc98.imagesplitter.ImageSplitter.BackgroundType;
+
+/**
+ * An immutable set of the attributes used by the automatic split: the background type, the particle size and the
+ * particle distance. See {@link ImageSplitter} for more information about them. It also tells whether the exact
+ * {@link OccupancyMask} and the {@link PixelStatistics} of each subimage must be recorded or not, the connectivity of the
+ * pixels, and the size of the gaps that are bridged while looking for the subimages.
+ *
+ * <p>Since instances of this class can not be modified, the same configuration can be shared between threads, each one
+ * splitting its own images with its own {@link SplitWorkspace}. The {@code with} methods return a modified copy.</p>
+ *
+ * */
+public final class SplitConfig {
+
+	/**
+	 * The default configuration: transparent background, no particles, 4-connectivity and no gaps bridged.
+	 * */
+	public static final SplitConfig DEFAULT = new SplitConfig(BackgroundType.TRANSPARENT_0x33, 0, 0);
+
+	private final BackgroundType background;
+	private final int particleSize;
+	private final int particleDistance;
+	private final boolean masks;
+	private final int connectivity;
+	private final int bridgeGap;
+	private final boolean statistics;
+
+	/**
+	 * Constructs a new SplitConfig object.
+	 *
+	 * @param background the background type
+	 * @param particleSize the maximum size of a particle
+	 * @param particleDistance the maximum distance between a particle and its parent
+	 *
+	 * */
+	public SplitConfig(BackgroundType background, int particleSize, int particleDistance) {
+		this(background, particleSize, particleDistance, false, 4, 0, false);
+	}
+
+	private SplitConfig(BackgroundType background, int particleSize, int particleDistance, boolean masks,
+			int connectivity, int bridgeGap, boolean statistics) {
+
+		if(background == null) {
+			throw new NullPointerException("The background cannot be null!");
+		}
+
+		if(connectivity != 4 && connectivity != 8) {
+			throw new IllegalArgumentException("Connectivity must be 4 or 8");
+		}
+
+		if(bridgeGap < 0) {
+			throw new IllegalArgumentException("Bridge gap is < 0");
+		}
+
+		this.background = background;
+		this.particleSize = particleSize;
+		this.particleDistance = particleDistance;
+		this.masks = masks;
+		this.connectivity = connectivity;
+		this.bridgeGap = bridgeGap;
+		this.statistics = statistics;
+	}
+
+	public SplitConfig withBackground(BackgroundType background) {
+		return new SplitConfig(background, particleSize, particleDistance, masks, connectivity, bridgeGap, statistics);
+	}
+
+	public SplitConfig withParticleSize(int particleSize) {
+		return new SplitConfig(background, particleSize, particleDistance, masks, connectivity, bridgeGap, statistics);
+	}
+
+	public SplitConfig withParticleDistance(int particleDistance) {
+		return new SplitConfig(background, particleSize, particleDistance, masks, connectivity, bridgeGap, statistics);
+	}
+
+	/**
+	 * Returns a copy of this configuration that records, or not, the {@link OccupancyMask} of each subimage. Masks are
+	 * disabled by default.
+	 * 
+	 * @param masks whether to record the masks or not
+	 * 
+	 * @return the modified copy
+	 * 
+	 * */
+	public SplitConfig withMasks(boolean masks) {
+		return new SplitConfig(background, particleSize, particleDistance, masks, connectivity, bridgeGap, statistics);
+	}
+
+	/**
+	 * Returns a copy of this configuration with the given connectivity. With 4-connectivity, two pixels are connected
+	 * if they share a side. With 8-connectivity, they are also connected if they share a corner, so diagonal lines
+	 * are not broken into pieces. It is 4 by default.
+	 * 
+	 * @param connectivity 4 or 8
+	 * 
+	 * @return the modified copy
+	 * 
+	 * */
+	public SplitConfig withConnectivity(int connectivity) {
+		return new SplitConfig(background, particleSize, particleDistance, masks, connectivity, bridgeGap, statistics);
+	}
+
+	/**
+	 * Returns a copy of this configuration that joins the parts of a subimage separated by up to the given number of
+	 * background pixels, both horizontally and vertically. Unlike particles, gaps are bridged while the image is
+	 * scanned, by dilating the rows, and the result depends on the pixels instead of the bounds. It is 0 by default.
+	 * 
+	 * @param bridgeGap the maximum gap, in pixels
+	 * 
+	 * @return the modified copy
+	 * 
+	 * */
+	public SplitConfig withBridgeGap(int bridgeGap) {
+		return new SplitConfig(background, particleSize, particleDistance, masks, connectivity, bridgeGap, statistics);
+	}
+
+	/**
+	 * Returns a copy of this configuration that accumulates, or not, the {@link PixelStatistics} of each subimage while
+	 * the image is scanned. They are disabled by default.
+	 * 
+	 * @param statistics whether to accumulate the statistics or not
+	 * 
+	 * @return the modified copy
+	 * 
+	 * */
+	public SplitConfig withStatistics(boolean statistics) {
+		return new SplitConfig(background, particleSize, particleDistance, masks, connectivity, bridgeGap, statistics);
+	}
+
+	public BackgroundType getBackground() {
+		return background;
+	}
+
+	public int getParticleSize() {
+		return particleSize;
+	}
+
+	public int getParticleDistance() {
+		return particleDistance;
+	}
+
+	public boolean hasMasks() {
+		return masks;
+	}
+
+	public int getConnectivity() {
+		return connectivity;
+	}
+
+	public int getBridgeGap() {
+		return bridgeGap;
+	}
+
+	public boolean hasStatistics() {
+		return statistics;
+	}
+
+	@Override
+	public String toString() {
+		return "SplitConfig [background=" + background + ", particleSize=" + particleSize
+				+ ", particleDistance=" + particleDistance + ", masks=" + masks + ", connectivity=" + connectivity
+				+ ", bridgeGap=" + bridgeGap + ", statistics=" + statistics + "]";
+	}
+
+}
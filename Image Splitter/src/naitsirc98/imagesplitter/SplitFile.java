@@ -0,0 +1,240 @@
+package naitsirc98.imagesplitter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Compact binary format for {@link SplittedImageList} objects, so the result of a split can be stored and loaded later
+ * instead of splitting the image again. Files are read with {@link MappedSplitFile}.
+ *
+ * <p>All values are little endian. A file starts with a header:</p>
+ *
+ * <ul>
+ *
+ * <li>magic: the 4 ASCII bytes {@code ISPL}</li>
+ * <li>version: {@code u16}, currently 1</li>
+ * <li>block size: {@code u16}, number of subimages per block</li>
+ * <li>count: {@code u32}, number of subimages</li>
+ * <li>block count: {@code u32}</li>
+ * <li>source hash: {@code u64}, the {@link #hash(int[], int, int)} of the image that was split</li>
+ * <li>block offsets: {@code block count + 1} values of type {@code u32}, relative to the start of the data. The last one
+ * is the length of the data</li>
+ *
+ * </ul>
+ *
+ * <p>The data is a sequence of blocks. Each subimage is stored as six varints: x, y, row and column as the zigzag
+ * encoded difference with the previous subimage of the same block, and width and height as they are. The first subimage
+ * of each block is relative to zero, so any block can be decoded on its own.</p>
+ *
+ * */
+public final class SplitFile {
+
+	static final int MAGIC = 'I' | 'S' << 8 | 'P' << 16 | 'L' << 24;
+	static final int VERSION = 1;
+	static final int BLOCK_SIZE = 64;
+	static final int HEADER_SIZE = 24;
+
+	/**
+	 * Computes a 64 bit hash of an image, so a stored split can be checked against the image it came from.
+	 *
+	 * @param image the array image
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 *
+	 * @return the hash of the image
+	 *
+	 * */
+	public static long hash(int[] image, int width, int height) {
+
+		long h = 0x9E3779B97F4A7C15L ^ ((long) width << 32 | height & 0xFFFFFFFFL);
+
+		final int length = (int) Math.min(image.length, (long) width * height);
+
+		for(int i = 0;i < length;i++) {
+			h = Long.rotateLeft(h ^ image[i] * 0xC2B2AE3D27D4EB4FL, 31) * 0x165667B19E3779F9L;
+		}
+
+		return mix(h);
+	}
+
+	/**
+	 * Computes a 64 bit hash of a tiled image. It is the same as the hash of the image stored in a single array.
+	 *
+	 * @param image the tiled image
+	 *
+	 * @return the hash of the image
+	 *
+	 * */
+	public static long hash(TiledImage image) {
+
+		final int width = image.getWidth();
+		final int height = image.getHeight();
+
+		long h = 0x9E3779B97F4A7C15L ^ ((long) width << 32 | height & 0xFFFFFFFFL);
+
+		for(int y = 0;y < height;y++) {
+
+			final int[] chunk = image.chunks()[y / image.getChunkRows()];
+			final int offset = image.rowOffset(y);
+
+			for(int x = 0;x < width;x++) {
+				h = Long.rotateLeft(h ^ chunk[offset + x] * 0xC2B2AE3D27D4EB4FL, 31) * 0x165667B19E3779F9L;
+			}
+
+		}
+
+		return mix(h);
+	}
+
+	private static long mix(long h) {
+
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+
+		return h;
+	}
+
+	/**
+	 * Writes the given list into a file.
+	 *
+	 * @param sprites the list of subimages
+	 * @param sourceHash the hash of the image that was split
+	 * @param file the path of the file
+	 *
+	 * @throws IOException if an I/O error occurs
+	 *
+	 * */
+	public static void write(SplittedImageList sprites, long sourceHash, Path file) throws IOException {
+
+		try(OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+			write(sprites, sourceHash, out);
+		}
+
+	}
+
+	/**
+	 * Writes the given list into a stream. The stream is not closed.
+	 *
+	 * @param sprites the list of subimages
+	 * @param sourceHash the hash of the image that was split
+	 * @param out the output stream
+	 *
+	 * @throws IOException if an I/O error occurs
+	 *
+	 * */
+	public static void write(SplittedImageList sprites, long sourceHash, OutputStream out) throws IOException {
+
+		final int count = sprites.size();
+		final int blocks = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+		final ByteWriter data = new ByteWriter(count * 8 + 16);
+		final int[] offsets = new int[blocks + 1];
+
+		int prevX = 0, prevY = 0, prevRow = 0, prevColumn = 0;
+
+		for(int i = 0;i < count;i++) {
+
+			if(i % BLOCK_SIZE == 0) {
+				offsets[i / BLOCK_SIZE] = data.size;
+				prevX = prevY = prevRow = prevColumn = 0;
+			}
+
+			final ImageBounds b = sprites.get(i);
+
+			data.varint(zigzag(b.x - prevX));
+			data.varint(zigzag(b.y - prevY));
+			data.varint(b.width);
+			data.varint(b.height);
+			data.varint(zigzag(b.row - prevRow));
+			data.varint(zigzag(b.column - prevColumn));
+
+			prevX = b.x;
+			prevY = b.y;
+			prevRow = b.row;
+			prevColumn = b.column;
+		}
+
+		offsets[blocks] = data.size;
+
+		final ByteWriter header = new ByteWriter(HEADER_SIZE + offsets.length * 4);
+
+		header.int32(MAGIC);
+		header.int16(VERSION);
+		header.int16(BLOCK_SIZE);
+		header.int32(count);
+		header.int32(blocks);
+		header.int64(sourceHash);
+
+		for(int offset : offsets) {
+			header.int32(offset);
+		}
+
+		out.write(header.bytes, 0, header.size);
+		out.write(data.bytes, 0, data.size);
+	}
+
+	static int zigzag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	static int unzigzag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private SplitFile() {
+
+	}
+
+	private static final class ByteWriter {
+
+		byte[] bytes;
+		int size;
+
+		ByteWriter(int capacity) {
+			bytes = new byte[Math.max(16, capacity)];
+		}
+
+		void varint(int value) {
+
+			ensureCapacity(5);
+
+			while((value & ~0x7F) != 0) {
+				bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+
+			bytes[size++] = (byte) value;
+		}
+
+		void int16(int value) {
+			ensureCapacity(2);
+			bytes[size++] = (byte) value;
+			bytes[size++] = (byte) (value >>> 8);
+		}
+
+		void int32(int value) {
+			int16(value);
+			int16(value >>> 16);
+		}
+
+		void int64(long value) {
+			int32((int) value);
+			int32((int) (value >>> 32));
+		}
+
+		private void ensureCapacity(int n) {
+			if(size + n > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(size + n, bytes.length * 2));
+			}
+		}
+
+	}
+
+}
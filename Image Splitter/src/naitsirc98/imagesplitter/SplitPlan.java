@@ -0,0 +1,125 @@
+package naitsirc98.imagesplitter;
+
+/**
+ * Describes how an adaptive split decided to split an image, and the statistics it based its decision on. See
+ * {@link ImageSplitter#splitAuto()}.
+ *
+ * <p>Statistics are estimated from a sample of the rows and columns of the image, so they are approximate.</p>
+ *
+ * */
+public final class SplitPlan {
+
+	/**
+	 * The ways an adaptive split may split an image.
+	 * */
+	public enum Strategy {
+
+		/**
+		 * The image is a regular grid of subimages separated by empty rows and columns. Its rows of cells are split
+		 * between the threads and labeled across the whole width, and the empty rows between them are only checked.
+		 * */
+		GRID,
+
+		/**
+		 * The image is split automatically by the current thread.
+		 * */
+		SEQUENTIAL,
+
+		/**
+		 * The image is cut into horizontal strips at empty rows, each strip is labeled by a different thread, and the
+		 * components of all of them are merged and sorted together.
+		 * */
+		PARALLEL
+
+	}
+
+	private final Strategy strategy;
+	private final int threads;
+	private final double density;
+	private final long estimatedComponents;
+	private final int columns, rows;
+	private final int cellWidth, cellHeight;
+	private final long nanos;
+
+	SplitPlan(Strategy strategy, int threads, double density, long estimatedComponents, int columns, int rows,
+			int cellWidth, int cellHeight, long nanos) {
+		this.strategy = strategy;
+		this.threads = threads;
+		this.density = density;
+		this.estimatedComponents = estimatedComponents;
+		this.columns = columns;
+		this.rows = rows;
+		this.cellWidth = cellWidth;
+		this.cellHeight = cellHeight;
+		this.nanos = nanos;
+	}
+
+	public Strategy getStrategy() {
+		return strategy;
+	}
+
+	/**
+	 * @return the number of threads used, which is also the number of strips when the strategy is {@code GRID} or
+	 * {@code PARALLEL}
+	 * */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @return the fraction of the sampled pixels that are not background, between 0 and 1
+	 * */
+	public double getDensity() {
+		return density;
+	}
+
+	/**
+	 * @return the estimated number of components of the image, before merging particles
+	 * */
+	public long getEstimatedComponents() {
+		return estimatedComponents;
+	}
+
+	/**
+	 * @return the number of columns of the grid, or 0 if the strategy is not {@code GRID}
+	 * */
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @return the number of rows of the grid, or 0 if the strategy is not {@code GRID}
+	 * */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return the width of a cell of the grid, or 0 if the strategy is not {@code GRID}
+	 * */
+	public int getCellWidth() {
+		return cellWidth;
+	}
+
+	/**
+	 * @return the height of a cell of the grid, or 0 if the strategy is not {@code GRID}
+	 * */
+	public int getCellHeight() {
+		return cellHeight;
+	}
+
+	/**
+	 * @return the time spent sampling the image and choosing the strategy, in nanoseconds
+	 * */
+	public long getPlanningNanos() {
+		return nanos;
+	}
+
+	@Override
+	public String toString() {
+		return "SplitPlan [strategy=" + strategy + ", threads=" + threads + ", density=" + density
+				+ ", estimatedComponents=" + estimatedComponents + ", columns=" + columns + ", rows=" + rows
+				+ ", cellWidth=" + cellWidth + ", cellHeight=" + cellHeight + ", nanos=" + nanos + "]";
+	}
+
+}
@@ -0,0 +1,497 @@
+package naitsirc98.imagesplitter;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import naitsirc98.imagesplitter.ImageSplitter.BackgroundType;
+import naitsirc98.imagesplitter.SplitPlan.Strategy;
+
+/**
+ * Chooses how to split an image from a sample of its pixels, and splits it that way.
+ *
+ * <p>A few rows and columns, spread over the whole image, are read to estimate the density of the image, its number of
+ * runs and components, and which rows and columns are empty. From the density, runs and components, the time it takes
+ * to label the image is estimated, and it is labeled by as many threads as needed to give each one a few milliseconds
+ * of work, up to the given parallelism. Then:</p>
+ *
+ * <ul>
+ * <li>If the non empty columns and rows form bands of the same size at a regular pitch, the image is a grid. Its rows
+ * of cells are split between the threads, and each thread labels its rows of cells across the whole width. The rows
+ * between them are only checked to be empty, row by row, which is cheaper than labeling them, so this is faster than
+ * cutting the image into as many strips. If one of them turns out not to be empty, the image is split as if it was
+ * not a grid.</li>
+ * <li>Otherwise, if more than one thread is worth it, the image is cut into strips at empty rows near evenly spaced
+ * positions, and each strip is labeled in parallel.</li>
+ * <li>If none of the above fits, the image is split by the current thread.</li>
+ * </ul>
+ *
+ * <p>Particles are merged and the result is sorted once all the rows of cells or strips are labeled, so the result is
+ * always the same as splitting the whole image at once. Neither a grid nor strips are used when both masks and
+ * particles are enabled.</p>
+ *
+ * */
+final class SplitPlanner {
+
+	private static final int SAMPLES = 64;
+	private static final int MIN_CELLS = 4;
+
+	// Coste aproximado de etiquetar, en nanosegundos, y trabajo minimo que compensa usar otro hilo
+	private static final double PIXEL_NANOS = 1.5;
+	private static final double FOREGROUND_NANOS = 6;
+	private static final double RUN_NANOS = 45;
+	private static final double COMPONENT_NANOS = 80;
+	private static final double MIN_STRIP_NANOS = 2e6;
+
+	private final TiledImage image;
+	private final SplitConfig config;
+	private final BackgroundType background;
+	private final int width;
+	private final int height;
+
+	private boolean[] usedColumns;
+	private boolean[] usedRows;
+	private long foreground;
+	private long sampled;
+	private long estimatedRuns;
+	private long estimatedComponents;
+
+	SplitPlanner(TiledImage image, SplitConfig config) {
+		this.image = image;
+		this.config = config;
+		this.background = config.getBackground();
+		this.width = image.getWidth();
+		this.height = image.getHeight();
+	}
+
+	/**
+	 * Splits the image the way that seems fastest.
+	 *
+	 * @param workspace the workspace of the current thread
+	 * @param executor the executor where strips are labeled
+	 * @param parallelism the maximum number of strips
+	 *
+	 * @return the list of the subimage bounds, with the plan that was followed
+	 *
+	 * */
+	SplittedImageList split(SplitWorkspace workspace, Executor executor, int parallelism) {
+
+		final long start = System.nanoTime();
+
+		sample();
+
+		final double density = sampled == 0 ? 0 : (double) foreground / sampled;
+		final int threads = threads(density, parallelism);
+
+		SplittedImageList sprites = null;
+		SplitPlan plan = null;
+
+		// Las mascaras de las franjas solo se pueden unir sin particulas
+		if(!(config.hasMasks() && hasParticles())) {
+
+			final int[] columns = regularBands(usedColumns);
+			final int[] rows = regularBands(usedRows);
+
+			if(columns != null && rows != null && columns[2] * rows[2] >= MIN_CELLS && separated(rows)) {
+
+				final int[] cuts = gridCuts(rows, threads);
+
+				plan = new SplitPlan(Strategy.GRID, cuts.length - 1, density, estimatedComponents, columns[2], rows[2],
+						columns[1], rows[1], System.nanoTime() - start);
+
+				sprites = strips(workspace, executor, cuts, rows);
+			}
+
+			if(sprites == null) {
+
+				final int[] cuts = cuts(threads);
+
+				if(cuts != null) {
+					plan = new SplitPlan(Strategy.PARALLEL, cuts.length - 1, density, estimatedComponents, 0, 0, 0, 0,
+							System.nanoTime() - start);
+					sprites = strips(workspace, executor, cuts, null);
+				}
+
+			}
+
+		}
+
+		if(sprites == null) {
+			plan = new SplitPlan(Strategy.SEQUENTIAL, 1, density, estimatedComponents, 0, 0, 0, 0,
+					System.nanoTime() - start);
+			sprites = workspace.split(image, config, null, null);
+		}
+
+		sprites.plan = plan;
+
+		return sprites;
+	}
+
+	private boolean hasParticles() {
+		return ParticleClusterer.isEnabled(config.getParticleSize(), config.getParticleDistance());
+	}
+
+	/**
+	 * Estimates how long labeling the image takes from its size, its density and its estimated runs and components, and
+	 * chooses the number of threads so that each one labels for at least {@code MIN_STRIP_NANOS}.
+	 * */
+	private int threads(double density, int parallelism) {
+
+		final long pixels = image.getPixelCount();
+
+		final double nanos = pixels * PIXEL_NANOS + density * pixels * FOREGROUND_NANOS + estimatedRuns * RUN_NANOS
+				+ estimatedComponents * COMPONENT_NANOS;
+
+		return (int) Math.max(1, Math.min(parallelism, nanos / MIN_STRIP_NANOS));
+	}
+
+	/**
+	 * Reads some pairs of consecutive rows and some columns. The second row of each pair tells how many runs start a
+	 * new component, which estimates the number of components of the image.
+	 * */
+	private void sample() {
+
+		usedColumns = new boolean[width];
+		usedRows = new boolean[height];
+
+		final int rowSamples = Math.min(height, SAMPLES);
+		final int reach = config.getConnectivity() == 8 ? 1 : 0;
+
+		long starts = 0;
+		int pairs = 0;
+		int firstRuns = 0;
+
+		for(int k = 0;k < rowSamples;k++) {
+
+			final int y = (int) ((2L * k + 1) * height / (2L * rowSamples));
+
+			final int[] chunk = chunk(y);
+			final int offset = image.rowOffset(y);
+
+			// Final del ultimo pixel que no es fondo, para contar los runs de la fila
+			int prevEnd = Integer.MIN_VALUE;
+			int runs = 0;
+
+			for(int x = 0;x < width;x++) {
+
+				if(!background.contains(chunk[offset + x])) {
+
+					usedColumns[x] = true;
+					foreground++;
+
+					if(x != prevEnd) {
+						runs++;
+					}
+
+					prevEnd = x + 1;
+				}
+
+			}
+
+			sampled += width;
+			firstRuns += runs;
+
+			if(y + 1 < height) {
+				starts += newRuns(chunk, offset, chunk(y + 1), image.rowOffset(y + 1), reach);
+				pairs++;
+			}
+
+		}
+
+		estimatedRuns = rowSamples == 0 ? 0 : Math.round((double) firstRuns / rowSamples * height);
+		estimatedComponents = pairs == 0 ? firstRuns : Math.round((double) starts / pairs * height);
+
+		final int columnSamples = Math.min(width, SAMPLES);
+
+		for(int k = 0;k < columnSamples;k++) {
+
+			final int x = (int) ((2L * k + 1) * width / (2L * columnSamples));
+
+			for(int y = 0;y < height;y++) {
+				if(!background.contains(chunk(y)[image.rowOffset(y) + x])) {
+					usedRows[y] = true;
+				}
+			}
+
+		}
+
+	}
+
+	/**
+	 * Counts the runs of a row that do not touch any run of the row above.
+	 * */
+	private int newRuns(int[] above, int aboveOffset, int[] row, int rowOffset, int reach) {
+
+		int count = 0;
+		int x = 0;
+
+		while(x < width) {
+
+			if(background.contains(row[rowOffset + x])) {
+				x++;
+				continue;
+			}
+
+			final int start = x;
+
+			do {
+				x++;
+			} while(x < width && !background.contains(row[rowOffset + x]));
+
+			boolean touches = false;
+
+			for(int ax = Math.max(0, start - reach);ax < Math.min(width, x + reach) && !touches;ax++) {
+				touches = !background.contains(above[aboveOffset + ax]);
+			}
+
+			if(!touches) {
+				count++;
+			}
+
+		}
+
+		return count;
+	}
+
+	/**
+	 * Finds the bands of consecutive used positions, if they all have the same size and are at a regular pitch.
+	 *
+	 * @return the first position, the size and the number of the bands, and their pitch, or null if they are not regular
+	 * */
+	private int[] regularBands(boolean[] used) {
+
+		int first = -1, size = -1, pitch = -1, count = 0;
+		int previous = -1;
+
+		for(int i = 0;i < used.length;) {
+
+			if(!used[i]) {
+				i++;
+				continue;
+			}
+
+			final int start = i;
+
+			while(i < used.length && used[i]) {
+				i++;
+			}
+
+			if(count == 0) {
+				first = start;
+				size = i - start;
+			} else if(i - start != size || (count > 1 && start - previous != pitch)) {
+				return null;
+			} else {
+				pitch = start - previous;
+			}
+
+			previous = start;
+			count++;
+		}
+
+		if(count == 0) {
+			return null;
+		}
+
+		return new int[] {first, size, count, count > 1 ? pitch : size};
+	}
+
+	/**
+	 * Checks that the rows between rows of cells are taller than the bridged gap, so no component crosses them, and that
+	 * some rows are left after the ones labeled to finish each row of cells, or a grid would not be faster.
+	 * */
+	private boolean separated(int[] rows) {
+
+		final int flush = config.getBridgeGap() + 1;
+
+		if(rows[2] > 1 && rows[3] - rows[1] < flush) {
+			return false;
+		}
+
+		final int last = rows[0] + (rows[2] - 1) * rows[3] + rows[1];
+
+		final long skipped = rows[0] + (long) (rows[2] - 1) * Math.max(0, rows[3] - rows[1] - flush)
+				+ Math.max(0, height - last - flush);
+
+		return skipped > 0;
+	}
+
+	/**
+	 * Splits the rows of cells between the threads. Each strip starts at its first row of cells, so the rows between
+	 * two rows of cells belong to the strip above.
+	 *
+	 * @return the first row of each strip followed by the height
+	 * */
+	private int[] gridCuts(int[] rows, int threads) {
+
+		final int strips = Math.min(threads, rows[2]);
+		final int[] cuts = new int[strips + 1];
+
+		for(int i = 1;i < strips;i++) {
+			cuts[i] = rows[0] + (int) ((long) i * rows[2] / strips) * rows[3];
+		}
+
+		cuts[strips] = height;
+
+		return cuts;
+	}
+
+	/**
+	 * Chooses where to cut the image into strips: at the first row of a band of empty rows, as near as possible to
+	 * evenly spaced positions. Bands must be taller than the bridged gap, so no component crosses a cut.
+	 *
+	 * @return the first row of each strip followed by the height, or null if the image should not be cut
+	 * */
+	private int[] cuts(int strips) {
+
+		if(strips < 2) {
+			return null;
+		}
+
+		final int need = config.getBridgeGap() + 1;
+		final int window = height / (2 * strips);
+
+		int[] cuts = new int[strips + 1];
+		int count = 1;
+
+		for(int k = 1;k < strips;k++) {
+
+			final int target = (int) ((long) k * height / strips);
+			final int from = Math.max(cuts[count-1] + 1, target - window);
+			final int to = Math.min(height - need, target + window);
+
+			int best = -1;
+			int empty = 0;
+
+			for(int y = from;y <= to + need - 1 && y < height;y++) {
+
+				if(!isEmpty(0, y, width, y + 1)) {
+					empty = 0;
+					continue;
+				}
+
+				if(++empty >= need) {
+
+					final int cut = y - need + 1;
+
+					if(best < 0 || Math.abs(cut - target) < Math.abs(best - target)) {
+						best = cut;
+					}
+
+					if(cut >= target) {
+						break;
+					}
+
+				}
+
+			}
+
+			if(best > cuts[count-1]) {
+				cuts[count++] = best;
+			}
+
+		}
+
+		if(count < 2) {
+			return null;
+		}
+
+		cuts[count++] = height;
+
+		return Arrays.copyOf(cuts, count);
+	}
+
+	/**
+	 * Labels each strip in a different thread, the last one in the current thread, and merges them.
+	 *
+	 * @param cuts the first row of each strip followed by the height
+	 * @param rows the rows of cells of a grid, or null to label every row
+	 *
+	 * @return the list of the subimage bounds, or null if a row between the rows of cells was not empty
+	 * */
+	private SplittedImageList strips(SplitWorkspace workspace, Executor executor, int[] cuts, int[] rows) {
+
+		// Cada franja necesita su propio espacio de trabajo hasta el final, un hilo del executor puede etiquetar varias
+		final int count = cuts.length - 1;
+		final SplitWorkspace[] strips = workspace.strips(count);
+		final boolean[] labeled = new boolean[count];
+		final CompletableFuture<?>[] tasks = new CompletableFuture<?>[count - 1];
+
+		final int last = count - 1;
+
+		boolean finished = false;
+
+		try {
+
+			for(int i = 0;i < tasks.length;i++) {
+				final int strip = i;
+				tasks[i] = CompletableFuture.runAsync(
+						() -> labeled[strip] = strips[strip].label(image, cuts[strip], cuts[strip+1], rows, config), executor);
+			}
+
+			// La ultima franja la etiqueta este hilo mientras espera a las demas
+			labeled[last] = strips[last].label(image, cuts[last], cuts[last+1], rows, config);
+
+			finished = true;
+
+		} finally {
+
+			// Las otras franjas escriben en los espacios de trabajo de este, no se puede salir mientras sigan
+			if(!finished) {
+				for(CompletableFuture<?> task : tasks) {
+					if(task != null) {
+						task.handle((result, e) -> null).join();
+					}
+				}
+			}
+
+		}
+
+		try {
+			CompletableFuture.allOf(tasks).join();
+		} catch(CompletionException e) {
+
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+
+			if(e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+
+			throw e;
+		}
+
+		for(boolean l : labeled) {
+			if(!l) {
+				return null;
+			}
+		}
+
+		return workspace.merge(strips, count, width, height, config);
+	}
+
+	private boolean isEmpty(int fromX, int fromY, int toX, int toY) {
+
+		for(int y = fromY;y < toY;y++) {
+
+			final int[] chunk = chunk(y);
+			final int offset = image.rowOffset(y);
+
+			for(int x = fromX;x < toX;x++) {
+				if(!background.contains(chunk[offset + x])) {
+					return false;
+				}
+			}
+
+		}
+
+		return true;
+	}
+
+	private int[] chunk(int y) {
+		return image.chunks()[y / image.getChunkRows()];
+	}
+
+}
@@ -0,0 +1,240 @@
+package naitsirc98.imagesplitter;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Flow.Publisher} that splits an image automatically and publishes each subimage as soon as it is found, so
+ * it can be extracted or uploaded while the rest of the image is still being scanned.
+ *
+ * <p>Every subscriber gets its own split, which runs in the given executor using the {@link SplitWorkspace} of that
+ * thread. A subimage is published once its last row has been scanned, in the order they are finished. If particles are
+ * enabled in the {@link SplitConfig}, subimages may still be merged at the end, so in that case they are all published
+ * after the whole image has been scanned.</p>
+ *
+ * <p>Subimages are published without row and column. A {@link SplitSubscriber} also receives the sorted result, made of
+ * the same {@link ImageBounds} objects, before {@code onComplete}. Masks and statistics, if enabled, are set just before
+ * that too.</p>
+ *
+ * <p>The split waits while the subscriber has no outstanding demand, so a slow consumer slows the split down instead of
+ * filling memory. Cancelling the subscription stops the split at the next row.</p>
+ *
+ * */
+public final class SplitPublisher implements Flow.Publisher<ImageBounds> {
+
+	private final TiledImage image;
+	private final SplitConfig config;
+	private final Executor executor;
+	private final int dx;
+	private final int dy;
+
+	/**
+	 * Constructs a publisher for the given image.
+	 *
+	 * @param image the array image
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param config the split configuration
+	 * @param executor the executor where each split runs
+	 *
+	 * */
+	public SplitPublisher(int[] image, int width, int height, SplitConfig config, Executor executor) {
+		this(TiledImage.wrap(image, width, height), config, executor);
+	}
+
+	/**
+	 * Constructs a publisher for the given tiled image.
+	 *
+	 * @param image the tiled image
+	 * @param config the split configuration
+	 * @param executor the executor where each split runs
+	 *
+	 * */
+	public SplitPublisher(TiledImage image, SplitConfig config, Executor executor) {
+		this(image, config, executor, 0, 0);
+	}
+
+	/**
+	 * Constructs a publisher for the given tiled image that moves every subimage by the given distance before publishing
+	 * it, used to publish the subimages of a view in the coordinates of the whole image.
+	 *
+	 * @param image the tiled image
+	 * @param config the split configuration
+	 * @param executor the executor where each split runs
+	 * @param dx the distance to move the subimages in the x axis
+	 * @param dy the distance to move the subimages in the y axis
+	 *
+	 * */
+	SplitPublisher(TiledImage image, SplitConfig config, Executor executor, int dx, int dy) {
+
+		if(image == null) {
+			throw new NullPointerException("The image cannot be null!");
+		}
+
+		if(config == null) {
+			throw new NullPointerException("The config cannot be null!");
+		}
+
+		if(executor == null) {
+			throw new NullPointerException("The executor cannot be null!");
+		}
+
+		this.image = image;
+		this.config = config;
+		this.executor = executor;
+		this.dx = dx;
+		this.dy = dy;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super ImageBounds> subscriber) {
+
+		if(subscriber == null) {
+			throw new NullPointerException("The subscriber cannot be null!");
+		}
+
+		SplitSubscription subscription = new SplitSubscription(subscriber);
+
+		subscriber.onSubscribe(subscription);
+
+		try {
+			executor.execute(subscription);
+		} catch(RejectedExecutionException e) {
+			subscription.cancel();
+			subscriber.onError(e);
+		}
+
+	}
+
+	/**
+	 * The subscription of one subscriber. Every signal to the subscriber is sent from the thread of the split.
+	 * */
+	private final class SplitSubscription implements Flow.Subscription, Runnable, Consumer<ImageBounds> {
+
+		private final Flow.Subscriber<? super ImageBounds> subscriber;
+		private final CancellationToken token = new CancellationToken();
+
+		private long demand;
+		private boolean cancelled;
+		private Throwable error;
+
+		SplitSubscription(Flow.Subscriber<? super ImageBounds> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public synchronized void request(long n) {
+
+			if(n <= 0) {
+				// Se notifica desde el hilo del split
+				error = new IllegalArgumentException("The number of requested elements must be > 0: " + n);
+				cancel();
+				return;
+			}
+
+			demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+
+			notifyAll();
+		}
+
+		@Override
+		public synchronized void cancel() {
+			cancelled = true;
+			token.cancel();
+			notifyAll();
+		}
+
+		@Override
+		public void run() {
+
+			try {
+
+				SplittedImageList sprites = SplitWorkspace.get().split(image, config, token, null, this);
+
+				final Throwable e;
+
+				synchronized(this) {
+
+					if(cancelled && error == null) {
+						return;
+					}
+
+					e = error;
+				}
+
+				if(e != null) {
+					subscriber.onError(e);
+				} else if(!sprites.isComplete()) {
+					subscriber.onError(new CancellationException("The split was interrupted"));
+				} else {
+
+					// Los subimages ya se movieron al entregarlos, pero las mascaras y estadisticas se calculan al final
+					if(dx != 0 || dy != 0) {
+						for(ImageBounds bounds : sprites) {
+
+							if(bounds.mask != null) {
+								bounds.mask = bounds.mask.translate(dx, dy);
+							}
+
+							if(bounds.statistics != null) {
+								bounds.statistics = bounds.statistics.translate(dx, dy);
+							}
+
+						}
+					}
+
+					if(subscriber instanceof SplitSubscriber) {
+						((SplitSubscriber) subscriber).onSorted(sprites);
+					}
+
+					subscriber.onComplete();
+				}
+
+			} catch(Throwable e) {
+
+				synchronized(this) {
+					if(cancelled) {
+						return;
+					}
+				}
+
+				subscriber.onError(e);
+			}
+
+		}
+
+		@Override
+		public void accept(ImageBounds bounds) {
+
+			synchronized(this) {
+
+				while(demand == 0 && !cancelled) {
+
+					try {
+						wait();
+					} catch(InterruptedException e) {
+						// El token ya esta cancelado por la interrupcion, el split termina en la siguiente fila
+						Thread.currentThread().interrupt();
+						return;
+					}
+
+				}
+
+				if(cancelled) {
+					return;
+				}
+
+				demand--;
+			}
+
+			bounds.translate(dx, dy);
+
+			subscriber.onNext(bounds);
+		}
+
+	}
+
+}
@@ -0,0 +1,26 @@
+package naitsirc98.imagesplitter;
+
+import java.util.concurrent.Flow;
+
+/**
+ * A {@link Flow.Subscriber} of a {@link SplitPublisher} that also wants the final, sorted result of the split.
+ *
+ * <p>Subimages are received with {@code onNext} in the order they are found, without row and column. Once the whole
+ * image has been scanned and the result sorted, {@link #onSorted(SplittedImageList)} is called with the same
+ * {@link ImageBounds} objects, now with their row and column, and then {@code onComplete}.</p>
+ *
+ * */
+public interface SplitSubscriber extends Flow.Subscriber<ImageBounds> {
+
+	/**
+	 * Called once after the last {@code onNext} and before {@code onComplete}. It does not need any demand.
+	 *
+	 * <p>Like in {@link ImageSplitter#split()}, subimages that the sort does not reach are not in the list, even if they
+	 * were received before.</p>
+	 *
+	 * @param sprites the sorted list of the subimage bounds
+	 *
+	 * */
+	void onSorted(SplittedImageList sprites);
+
+}
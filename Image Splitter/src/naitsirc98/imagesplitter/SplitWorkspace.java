@@ -0,0 +1,454 @@
+package naitsirc98.imagesplitter;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import naitsirc98.imagesplitter.ImageSplitter.BackgroundType;
+
+/**
+ * A {@code SplitWorkspace} holds the scratch buffers used by the automatic split: the runs and labels of the rows being
+ * scanned, the bounds of the components found and the arrays used to merge particles and to sort the result.
+ *
+ * <p>When masks are enabled, it also keeps the spans of every component until they are attached to the result. In the
+ * same way, when statistics are enabled it keeps the sums of the pixels of every component.</p>
+ *
+ * <p>Buffers only grow, so once a workspace has split an image of a certain size, splitting images of the same size or
+ * smaller does not allocate anything but the returned {@link SplittedImageList} and its {@link ImageBounds}. This also
+ * holds for parallel splits: the workspace keeps one workspace per strip, which are reused by the next parallel split.</p>
+ *
+ * <p>A workspace must not be used by two threads at the same time. You may create one per thread and pass it explicitly,
+ * or use the one returned by {@link #get()}, which is kept per thread.</p>
+ *
+ * */
+public final class SplitWorkspace {
+
+	private static final int PROGRESS_ROWS = 64;
+
+	private static final ThreadLocal<SplitWorkspace> LOCAL = ThreadLocal.withInitial(SplitWorkspace::new);
+
+	/**
+	 * Returns the workspace of the current thread.
+	 *
+	 * @return the workspace of the current thread
+	 *
+	 * */
+	public static SplitWorkspace get() {
+		return LOCAL.get();
+	}
+
+	final ComponentLabeler labeler = new ComponentLabeler();
+	final ParticleClusterer clusterer = new ParticleClusterer();
+	final ComponentSorter sorter = new ComponentSorter();
+	final MaskBuilder masks = new MaskBuilder();
+
+	private final int[][] single = new int[1][];
+
+	// Subimages ya entregados, por slot y despues por componente
+	private ImageBounds[] emitted = new ImageBounds[0];
+
+	// Componentes de todas las franjas de un split paralelo
+	private int[] stripMinX = new int[0];
+	private int[] stripMinY = new int[0];
+	private int[] stripMaxX = new int[0];
+	private int[] stripMaxY = new int[0];
+	private long[] stripStats = new long[0];
+
+	// Estadisticas agrupadas por subimage despues de unir las particulas
+	private long[] groupStats = new long[0];
+
+	// Espacios de trabajo de las franjas de un split paralelo, se reutilizan entre splits
+	private SplitWorkspace[] strips = new SplitWorkspace[0];
+
+	/**
+	 * Default constructor.
+	 * */
+	public SplitWorkspace() {
+
+	}
+
+	SplittedImageList split(int[] image, int width, int height, SplitConfig config,
+			CancellationToken token, ProgressListener listener) {
+
+		// Una imagen normal es una imagen de un solo trozo
+		single[0] = image;
+
+		try {
+			return split(single, Math.max(height, 1), 0, width, width, height, config, token, listener, null);
+		} finally {
+			single[0] = null;
+		}
+
+	}
+
+	SplittedImageList split(TiledImage image, SplitConfig config, CancellationToken token, ProgressListener listener) {
+		return split(image, config, token, listener, null);
+	}
+
+	SplittedImageList split(TiledImage image, SplitConfig config, CancellationToken token, ProgressListener listener,
+			Consumer<ImageBounds> sink) {
+		return split(image.chunks(), image.getChunkRows(), image.getOffset(), image.getStride(), image.getWidth(),
+				image.getHeight(), config, token, listener, sink);
+	}
+
+	private SplittedImageList split(int[][] chunks, int chunkRows, int offset, int stride, int width, int height,
+			SplitConfig config, CancellationToken token, ProgressListener listener, Consumer<ImageBounds> sink) {
+
+		final boolean particles = ParticleClusterer.isEnabled(config.getParticleSize(), config.getParticleDistance());
+
+		labeler.begin(width, config.getBackground(), config.getConnectivity(), config.getBridgeGap(), config.hasMasks(),
+				config.hasStatistics());
+
+		// Sin particulas un componente terminado ya no cambia, asi que se entrega en cuanto se termina
+		if(sink != null && !particles) {
+			labeler.onFinish = slot -> emit(sink, slot);
+		}
+
+		try {
+			return scan(chunks, chunkRows, offset, stride, width, height, config, token, listener, sink, particles);
+		} finally {
+			labeler.onFinish = null;
+			Arrays.fill(emitted, null);
+		}
+
+	}
+
+	private SplittedImageList scan(int[][] chunks, int chunkRows, int offset, int stride, int width, int height,
+			SplitConfig config, CancellationToken token, ProgressListener listener, Consumer<ImageBounds> sink,
+			boolean particles) {
+
+		boolean cancelled = false;
+		int y = 0;
+
+		for(;y < height;y++) {
+
+			if(token != null && token.isCancelled()) {
+				cancelled = true;
+				break;
+			}
+
+			labeler.row(chunks[y / chunkRows], offset + (y % chunkRows) * stride, y);
+
+			if(listener != null && y % PROGRESS_ROWS == PROGRESS_ROWS - 1) {
+				listener.progress(y + 1, height, labeler.finished);
+			}
+
+		}
+
+		labeler.end();
+
+		if(listener != null) {
+			listener.progress(y, height, labeler.finished);
+		}
+
+		final int count = clusterer.cluster(labeler.count, labeler.minX, labeler.minY, labeler.maxX, labeler.maxY,
+				config.getParticleSize(), config.getParticleDistance());
+
+		if(sink != null) {
+
+			if(particles) {
+
+				for(int c = 0;c < count;c++) {
+					emit(sink, c);
+				}
+
+			} else {
+
+				// Los slots se compactan en orden al terminar, cada subimage baja a la posicion de su componente
+				for(int slot = 0;slot < emitted.length;slot++) {
+					if(emitted[slot] != null) {
+						emitted[labeler.slotComponent(slot)] = emitted[slot];
+					}
+				}
+
+			}
+
+		}
+
+		SplittedImageList sprites = sorter.sort(count, labeler.minX, labeler.minY, labeler.maxX, labeler.maxY,
+				width, height, token, sink != null ? emitted : null);
+
+		sprites.complete &= !cancelled;
+
+		if(config.hasMasks()) {
+			attachMasks(sprites, count);
+		}
+
+		if(config.hasStatistics()) {
+			attachStatistics(sprites, labeler.stats, labeler.count, count);
+		}
+
+		return sprites;
+	}
+
+	/**
+	 * Labels some rows of the image, one strip of a parallel split, leaving its components in the labeler. The strip
+	 * must be surrounded by enough empty rows so no component crosses its borders.
+	 *
+	 * @param image the image
+	 * @param from the first row of the strip
+	 * @param to the last row of the strip plus one
+	 * @param config the split configuration
+	 *
+	 * */
+	void label(TiledImage image, int from, int to, SplitConfig config) {
+		label(image, from, to, null, config);
+	}
+
+	/**
+	 * Labels the rows of cells of a grid that are in one strip of the image, leaving its components in the labeler as
+	 * {@link #label(TiledImage, int, int, SplitConfig)} does. The rows between them are only checked to be empty,
+	 * which is cheaper than labeling them, except the first ones after each row of cells, which are also labeled so
+	 * the components are finished as if every row had been labeled.
+	 *
+	 * @param image the image
+	 * @param from the first row of the strip
+	 * @param to the last row of the strip plus one
+	 * @param rows the first row, the height, the number and the pitch of the rows of cells, or null to label every row
+	 * @param config the split configuration
+	 *
+	 * @return false if a row between the rows of cells is not empty, in which case the labeler must not be used
+	 *
+	 * */
+	boolean label(TiledImage image, int from, int to, int[] rows, SplitConfig config) {
+
+		final int[][] chunks = image.chunks();
+		final BackgroundType background = config.getBackground();
+		final int width = image.getWidth();
+
+		// Filas vacias que hay que etiquetar despues de una fila de celdas para que se cierren sus componentes
+		final int flush = config.getBridgeGap() + 1;
+
+		labeler.begin(width, background, config.getConnectivity(), config.getBridgeGap(), config.hasMasks(),
+				config.hasStatistics());
+
+		for(int y = from;y < to;y++) {
+
+			final int[] chunk = chunks[y / image.getChunkRows()];
+			final int offset = image.rowOffset(y);
+
+			if(rows != null) {
+
+				// Ultima fila de celdas que empieza en esta fila o antes
+				final int band = y < rows[0] ? -1 : Math.min((y - rows[0]) / rows[3], rows[2] - 1);
+				final int after = band < 0 ? Integer.MAX_VALUE : y - (rows[0] + band * rows[3] + rows[1]);
+
+				if(after >= 0) {
+
+					for(int x = 0;x < width;x++) {
+						if(!background.contains(chunk[offset + x])) {
+							return false;
+						}
+					}
+
+					if(after >= flush) {
+						continue;
+					}
+
+				}
+
+			}
+
+			labeler.row(chunk, offset, y);
+		}
+
+		labeler.end();
+
+		if(config.hasMasks()) {
+			// Sin particulas cada componente es su propio grupo
+			clusterer.cluster(labeler.count, labeler.minX, labeler.minY, labeler.maxX, labeler.maxY, 0, 0);
+			masks.group(labeler, clusterer, labeler.count);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the workspaces where the strips of a parallel split are labeled, creating the ones that are missing. They
+	 * belong to this workspace, so they must only be used by the split this workspace is used for.
+	 *
+	 * @param count the number of strips
+	 *
+	 * @return an array with at least {@code count} workspaces
+	 *
+	 * */
+	SplitWorkspace[] strips(int count) {
+
+		if(strips.length < count) {
+
+			final int old = strips.length;
+
+			strips = Arrays.copyOf(strips, count);
+
+			for(int i = old;i < count;i++) {
+				strips[i] = new SplitWorkspace();
+			}
+
+		}
+
+		return strips;
+	}
+
+	/**
+	 * Merges the components of the strips of a parallel split, from top to bottom, and then merges their particles and
+	 * sorts them as a whole. Since strips are cut at empty rows, components are in the same order as if the image had
+	 * been labeled at once, so the result is the same. Masks are only supported without particles.
+	 *
+	 * @param strips the workspaces that labeled each strip, from top to bottom
+	 * @param stripCount the number of strips
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param config the split configuration
+	 *
+	 * @return the list of the subimage bounds
+	 *
+	 * */
+	SplittedImageList merge(SplitWorkspace[] strips, int stripCount, int width, int height, SplitConfig config) {
+
+		final int[] offsets = new int[stripCount];
+
+		int total = 0;
+
+		for(int i = 0;i < stripCount;i++) {
+			offsets[i] = total;
+			total += strips[i].labeler.count;
+		}
+
+		ensureBounds(total);
+
+		for(int i = 0;i < stripCount;i++) {
+
+			final ComponentLabeler l = strips[i].labeler;
+
+			System.arraycopy(l.minX, 0, stripMinX, offsets[i], l.count);
+			System.arraycopy(l.minY, 0, stripMinY, offsets[i], l.count);
+			System.arraycopy(l.maxX, 0, stripMaxX, offsets[i], l.count);
+			System.arraycopy(l.maxY, 0, stripMaxY, offsets[i], l.count);
+		}
+
+		if(config.hasStatistics()) {
+
+			if(stripStats.length < total * ComponentLabeler.STATS) {
+				stripStats = new long[Math.max(total * ComponentLabeler.STATS, stripStats.length * 2)];
+			}
+
+			for(int i = 0;i < stripCount;i++) {
+				final ComponentLabeler l = strips[i].labeler;
+				System.arraycopy(l.stats, 0, stripStats, offsets[i] * ComponentLabeler.STATS, l.count * ComponentLabeler.STATS);
+			}
+
+		}
+
+		final int count = clusterer.cluster(total, stripMinX, stripMinY, stripMaxX, stripMaxY,
+				config.getParticleSize(), config.getParticleDistance());
+
+		SplittedImageList sprites = sorter.sort(count, stripMinX, stripMinY, stripMaxX, stripMaxY, width, height, null, null);
+
+		if(config.hasMasks()) {
+
+			for(int i = 0;i < sprites.size();i++) {
+
+				final int c = sorter.order[i];
+
+				int strip = Arrays.binarySearch(offsets, c);
+
+				// Con franjas vacias hay offsets repetidos, el componente es de la ultima franja que empieza antes
+				if(strip < 0) {
+					strip = -strip - 2;
+				}
+
+				while(strip + 1 < stripCount && offsets[strip+1] <= c) {
+					strip++;
+				}
+
+				final SplitWorkspace w = strips[strip];
+				final int local = c - offsets[strip];
+
+				sprites.get(i).mask = w.masks.build(w.labeler, local, w.labeler.minX[local], w.labeler.minY[local],
+						w.labeler.maxX[local], w.labeler.maxY[local]);
+			}
+
+		}
+
+		if(config.hasStatistics()) {
+			attachStatistics(sprites, stripStats, total, count);
+		}
+
+		return sprites;
+	}
+
+	private void ensureBounds(int capacity) {
+
+		if(stripMinX.length < capacity) {
+			final int length = Math.max(capacity, stripMinX.length * 2);
+			stripMinX = Arrays.copyOf(stripMinX, length);
+			stripMinY = Arrays.copyOf(stripMinY, length);
+			stripMaxX = Arrays.copyOf(stripMaxX, length);
+			stripMaxY = Arrays.copyOf(stripMaxY, length);
+		}
+
+	}
+
+	private void emit(Consumer<ImageBounds> sink, int index) {
+
+		if(index >= emitted.length) {
+			emitted = Arrays.copyOf(emitted, Math.max(16, Math.max(index + 1, emitted.length * 2)));
+		}
+
+		final ImageBounds bounds = new ImageBounds(labeler.minX[index], labeler.minY[index],
+				labeler.maxX[index] - labeler.minX[index] + 1, labeler.maxY[index] - labeler.minY[index] + 1);
+
+		emitted[index] = bounds;
+
+		sink.accept(bounds);
+	}
+
+	private void attachMasks(SplittedImageList sprites, int count) {
+
+		masks.group(labeler, clusterer, count);
+
+		for(int i = 0;i < sprites.size();i++) {
+
+			final int c = sorter.order[i];
+
+			sprites.get(i).mask = masks.build(labeler, c, labeler.minX[c], labeler.minY[c], labeler.maxX[c], labeler.maxY[c]);
+		}
+
+	}
+
+	/**
+	 * Adds up the statistics of the components merged into each group, and gives each sprite the statistics of its group.
+	 *
+	 * @param sprites the sorted sprites
+	 * @param stats the statistics of the components before merging particles
+	 * @param total the number of components before merging particles
+	 * @param count the number of groups
+	 *
+	 * */
+	private void attachStatistics(SplittedImageList sprites, long[] stats, int total, int count) {
+
+		final int size = ComponentLabeler.STATS;
+
+		if(groupStats.length < count * size) {
+			groupStats = new long[Math.max(count * size, groupStats.length * 2)];
+		}
+
+		Arrays.fill(groupStats, 0, count * size, 0L);
+
+		for(int i = 0;i < total;i++) {
+
+			final int g = clusterer.target(i) * size;
+
+			for(int k = 0;k < size;k++) {
+				groupStats[g + k] += stats[i * size + k];
+			}
+
+		}
+
+		for(int i = 0;i < sprites.size();i++) {
+			final int g = sorter.order[i] * size;
+			sprites.get(i).statistics = new PixelStatistics(Arrays.copyOfRange(groupStats, g, g + size));
+		}
+
+	}
+
+}
@@ -1,6 +1,11 @@
 package naitsirc98.imagesplitter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
 
 /**
  * An {@code ArrayList} of {@code ImageBounds}. 
@@ -14,11 +19,19 @@ import java.util.ArrayList;
  * <p>{@code getRange}: gets elements in the given range as an array</p>
  * </ul>
  * 
+ * <p>To blend many groups of subimages at once, like the particles of a whole spritesheet, use {@code blendGroups},
+ * {@code blendBy} or {@code blendConsecutive}. They merge every group and compact the list in one pass, instead of
+ * shifting the list once per group, and then renumber the rows and columns so they stay consecutive.</p>
+ * 
  * 
  * */
 public final class SplittedImageList extends ArrayList<ImageBounds> {
 
 	private static final long serialVersionUID = 1L;
+	
+	boolean complete = true;
+	
+	SplitPlan plan;
 
 	/**
 	 * Default constructor
@@ -36,6 +49,43 @@ public final class SplittedImageList extends ArrayList<ImageBounds> {
 		super(capacity);
 	}
 
+	/**
+	 * Checks whether the split that created this list finished or not. A split that is cancelled with a
+	 * {@link CancellationToken} returns the subimages found until then, and this method returns false.
+	 * 
+	 * @return true if the whole image was split, false if it was cancelled
+	 * 
+	 * */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * Returns how the image was split, if this list was created by an adaptive split. See {@link ImageSplitter#splitAuto()}.
+	 * 
+	 * @return the plan followed, or null if the split was not adaptive
+	 * 
+	 * */
+	public SplitPlan getPlan() {
+		return plan;
+	}
+
+	/**
+	 * Moves every subimage by the given distance, used to report the subimages of a region of an image in the
+	 * coordinates of the whole image.
+	 * 
+	 * @param dx the distance to move in the x axis
+	 * @param dy the distance to move in the y axis
+	 * 
+	 * */
+	void translate(int dx, int dy) {
+		
+		for(int i = 0;i < size();i++) {
+			get(i).translate(dx, dy);
+		}
+		
+	}
+	
 	/**
 	 * Combines two or more subimages into one, and replaces the old independent subimages by
 	 * the new one. The subimages must be consecutive.
@@ -49,13 +99,233 @@ public final class SplittedImageList extends ArrayList<ImageBounds> {
 		
 		ImageBounds result = ImageBounds.blend(getRange(indices[0], indices[indices.length-1]));
 		
-		removeRange(indices[0], indices[indices.length - 1]);
+		if(indices.length > 1) {
+			removeRange(indices[0] + 1, indices[indices.length - 1]);
+		}
 		
 		set(indices[0], result);
 		
 		return result;
 	}
 	
+	/**
+	 * Combines each group of subimages into one. Each result takes the place of the first subimage of its group, and
+	 * the rest of the group is removed. Unlike {@link #blend(int...)}, subimages of a group do not need to be consecutive
+	 * nor sorted, and all groups are merged in a single pass over the list. Rows and columns are then renumbered, see
+	 * {@link SplittedImageList}.
+	 * 
+	 * @param groups the indices of the subimages of each group. A subimage can not be in more than one group
+	 * 
+	 * @return the result subimage of each group, in the same order as the groups
+	 * 
+	 * */
+	public ImageBounds[] blendGroups(int[]... groups) {
+		
+		if(groups == null) {
+			throw new NullPointerException("The groups cannot be null!");
+		}
+		
+		final int[] owner = new int[size()];
+		
+		Arrays.fill(owner, -1);
+		
+		for(int g = 0;g < groups.length;g++) {
+			
+			if(groups[g] == null || groups[g].length == 0) {
+				throw new IllegalArgumentException("Group " + g + " is empty");
+			}
+			
+			for(int i : groups[g]) {
+				
+				if(i < 0 || i >= size()) {
+					throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size());
+				}
+				
+				if(owner[i] >= 0) {
+					throw new IllegalArgumentException("Subimage " + i + " is in more than one group");
+				}
+				
+				owner[i] = g;
+			}
+			
+		}
+		
+		return compact(owner, groups.length);
+	}
+	
+	/**
+	 * Combines the subimages that have the same key into one, in a single pass over the list. Each result takes the
+	 * place of the first subimage with its key. Subimages whose key is null are left as they are. See
+	 * {@link #blendGroups(int[]...)}.
+	 * 
+	 * @param key the function that gives the key of each subimage
+	 * 
+	 * @return the number of subimages removed
+	 * 
+	 * */
+	public int blendBy(Function<? super ImageBounds, ?> key) {
+		
+		if(key == null) {
+			throw new NullPointerException("The key function cannot be null!");
+		}
+		
+		final int size = size();
+		final int[] owner = new int[size];
+		final Map<Object, Integer> groups = new HashMap<>();
+		
+		for(int i = 0;i < size;i++) {
+			
+			final Object k = key.apply(get(i));
+			
+			owner[i] = k == null ? -1 : groups.computeIfAbsent(k, unused -> groups.size());
+		}
+		
+		compact(owner, groups.size());
+		
+		return size - size();
+	}
+	
+	/**
+	 * Combines the runs of neighbour subimages of this list that must go together into one, in a single pass over the
+	 * list. The predicate is tested once for each subimage and the one before it, and if it returns true, both end up
+	 * in the same result. See {@link #blendGroups(int[]...)}.
+	 * 
+	 * @param together the predicate that tells whether a subimage goes with the one before it
+	 * 
+	 * @return the number of subimages removed
+	 * 
+	 * */
+	public int blendConsecutive(BiPredicate<? super ImageBounds, ? super ImageBounds> together) {
+		
+		if(together == null) {
+			throw new NullPointerException("The predicate cannot be null!");
+		}
+		
+		final int size = size();
+		final int[] owner = new int[size];
+		
+		int groups = 0;
+		
+		for(int i = 0;i < size;i++) {
+			owner[i] = i > 0 && together.test(get(i-1), get(i)) ? groups - 1 : groups++;
+		}
+		
+		compact(owner, groups);
+		
+		return size - size();
+	}
+	
+	/**
+	 * Merges the subimages of each group and removes the rest of the group, keeping the order of the list.
+	 * 
+	 * @param owner the group of each subimage, or -1 if it is not in any group
+	 * @param count the number of groups
+	 * 
+	 * @return the result subimage of each group
+	 * 
+	 * */
+	private ImageBounds[] compact(int[] owner, int count) {
+		
+		final int size = size();
+		
+		// Los miembros de cada grupo se ordenan por indice contandolos primero, como en un counting sort
+		final int[] start = new int[count + 1];
+		
+		for(int i = 0;i < size;i++) {
+			if(owner[i] >= 0) {
+				start[owner[i]+1]++;
+			}
+		}
+		
+		for(int g = 0;g < count;g++) {
+			start[g+1] += start[g];
+		}
+		
+		final ImageBounds[] members = new ImageBounds[start[count]];
+		final int[] cursor = Arrays.copyOf(start, count);
+		
+		for(int i = 0;i < size;i++) {
+			if(owner[i] >= 0) {
+				members[cursor[owner[i]]++] = get(i);
+			}
+		}
+		
+		final ImageBounds[] results = new ImageBounds[count];
+		
+		for(int g = 0;g < count;g++) {
+			results[g] = ImageBounds.union(Arrays.copyOfRange(members, start[g], start[g+1]));
+		}
+		
+		// Cada resultado ocupa el sitio del primer miembro de su grupo, el resto se salta
+		final boolean[] placed = new boolean[count];
+		
+		int write = 0;
+		
+		for(int i = 0;i < size;i++) {
+			
+			final int g = owner[i];
+			
+			if(g < 0) {
+				set(write++, get(i));
+			} else if(!placed[g]) {
+				placed[g] = true;
+				set(write++, results[g]);
+			}
+			
+		}
+		
+		super.removeRange(write, size);
+		
+		renumber();
+		
+		return results;
+	}
+	
+	/**
+	 * Gives consecutive rows to the subimages, keeping their order, and consecutive columns to the subimages of each
+	 * row, in the order of the list. Subimages without row are not changed.
+	 * */
+	private void renumber() {
+		
+		int maxRow = -1;
+		
+		for(int i = 0;i < size();i++) {
+			maxRow = Math.max(maxRow, get(i).row);
+		}
+		
+		final int[] rank = new int[maxRow + 1];
+		
+		Arrays.fill(rank, -1);
+		
+		for(int i = 0;i < size();i++) {
+			if(get(i).row >= 0) {
+				rank[get(i).row] = 0;
+			}
+		}
+		
+		int rows = 0;
+		
+		for(int r = 0;r <= maxRow;r++) {
+			if(rank[r] == 0) {
+				rank[r] = rows++;
+			}
+		}
+		
+		final int[] columns = new int[rows];
+		
+		for(int i = 0;i < size();i++) {
+			
+			final ImageBounds bounds = get(i);
+			
+			if(bounds.row >= 0) {
+				bounds.row = rank[bounds.row];
+				bounds.column = columns[bounds.row]++;
+			}
+			
+		}
+		
+	}
+	
 	/**
 	 * Removes the elements that are between from and to, both included.
 	 * from must be <= to.
@@ -0,0 +1,368 @@
+package naitsirc98.imagesplitter;
+
+/**
+ * An image stored in several {@code int} arrays, so it can have more than {@code Integer.MAX_VALUE} pixels.
+ *
+ * <p>The image is cut into chunks of whole rows. Each chunk is an {@code int} array in the same ARGB format used by
+ * {@link ImageSplitter}, and every chunk has the same number of rows, except maybe the last one. Pixels may be accessed
+ * by their coordinates, or by their index {@code x + y * width} as a {@code long}, so a 100000 x 100000 image can be
+ * represented and split without overflowing.</p>
+ *
+ * <p>Since rows are never cut between two chunks, the automatic split reads each row directly from its chunk, as fast
+ * as with a single array.</p>
+ *
+ * <p>A tiled image may also be a view of a region of a bigger image stored in one array, see
+ * {@link #view(int[], int, int, int, int, int)}. Then its only chunk is the whole array, where the first pixel of the
+ * region is at {@link #getOffset()} and each row starts {@link #getStride()} values after the previous one.</p>
+ *
+ * <p>Like in {@link ImageSplitter}, the arrays are not copied when given, so <b>if they are modified outside this class,
+ * they will be modified here as well</b>.</p>
+ *
+ * */
+public final class TiledImage {
+
+	/**
+	 * The default maximum number of pixels of a chunk, 64 MB of ARGB values.
+	 * */
+	public static final int DEFAULT_CHUNK_PIXELS = 1 << 24;
+
+	/**
+	 * Creates a tiled image that uses the given array as its only chunk.
+	 *
+	 * @param image the array image
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 *
+	 * @return the new tiled image
+	 *
+	 * */
+	public static TiledImage wrap(int[] image, int width, int height) {
+
+		if(image == null) {
+			throw new NullPointerException("The image array cannot be null!");
+		}
+
+		check(width, height);
+
+		if((long) width * height > image.length) {
+			throw new IndexOutOfBoundsException("Width * Height is greater than the length of the image");
+		}
+
+		return new TiledImage(new int[][] {image}, width, height, Math.max(height, 1), 0, width);
+	}
+
+	/**
+	 * Creates a tiled image that is a view of a region of the given array image, without copying it. Pixel (0, 0) of the
+	 * view is pixel (x, y) of the array image.
+	 *
+	 * @param image the array image
+	 * @param x the x coordinate of the region in the array image
+	 * @param y the y coordinate of the region in the array image
+	 * @param width the width of the region
+	 * @param height the height of the region
+	 * @param stride the number of values between the start of two consecutive rows of the array image, usually its width
+	 *
+	 * @return the new tiled image
+	 *
+	 * */
+	public static TiledImage view(int[] image, int x, int y, int width, int height, int stride) {
+
+		if(image == null) {
+			throw new NullPointerException("The image array cannot be null!");
+		}
+
+		check(width, height);
+
+		if(x < 0 || y < 0) {
+			throw new IllegalArgumentException("Origin is < 0: " + x + ", " + y);
+		}
+
+		if(stride < x + width) {
+			throw new IllegalArgumentException("Stride is smaller than x + width: " + stride);
+		}
+
+		// Una region vacia no lee ningun pixel, asi que puede estar en cualquier sitio
+		if(width == 0 || height == 0) {
+			return new TiledImage(new int[][] {image}, width, height, Math.max(height, 1), 0, stride);
+		}
+
+		// La ultima fila de la region debe caber entera en el array
+		if((long) (y + height - 1) * stride + x + width > image.length) {
+			throw new IndexOutOfBoundsException("The region does not fit in the image");
+		}
+
+		return new TiledImage(new int[][] {image}, width, height, height, y * stride + x, stride);
+	}
+
+	/**
+	 * Creates a tiled image from the given chunks. All of them must have {@code chunkRows} rows, except the last one,
+	 * which may have less.
+	 *
+	 * @param chunks the chunks of the image
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param chunkRows the number of rows of each chunk
+	 *
+	 * @return the new tiled image
+	 *
+	 * */
+	public static TiledImage wrap(int[][] chunks, int width, int height, int chunkRows) {
+
+		if(chunks == null) {
+			throw new NullPointerException("The chunks array cannot be null!");
+		}
+
+		check(width, height);
+
+		if(chunkRows <= 0) {
+			throw new IllegalArgumentException("Chunk rows is <= 0");
+		}
+
+		if(chunks.length != chunkCount(height, chunkRows)) {
+			throw new IllegalArgumentException("Expected " + chunkCount(height, chunkRows) + " chunks, but got " + chunks.length);
+		}
+
+		for(int i = 0;i < chunks.length;i++) {
+
+			final int rows = Math.min(chunkRows, height - i * chunkRows);
+
+			if(chunks[i] == null) {
+				throw new NullPointerException("Chunk " + i + " is null");
+			}
+
+			if((long) width * rows > chunks[i].length) {
+				throw new IndexOutOfBoundsException("Chunk " + i + " is smaller than " + rows + " rows");
+			}
+
+		}
+
+		return new TiledImage(chunks.clone(), width, height, chunkRows, 0, width);
+	}
+
+	private static void check(int width, int height) {
+
+		if(width < 0) {
+			throw new IllegalArgumentException("Width is < 0");
+		}
+
+		if(height < 0) {
+			throw new IllegalArgumentException("Height is < 0");
+		}
+
+	}
+
+	private static int chunkCount(int height, int chunkRows) {
+		return (int) (((long) height + chunkRows - 1) / chunkRows);
+	}
+
+	private final int[][] chunks;
+	private final int width;
+	private final int height;
+	private final int chunkRows;
+	private final int offset;
+	private final int stride;
+
+	/**
+	 * Creates a new image, filled with 0, with chunks of at most {@link #DEFAULT_CHUNK_PIXELS} pixels.
+	 *
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 *
+	 * */
+	public TiledImage(int width, int height) {
+		this(width, height, Math.max(1, DEFAULT_CHUNK_PIXELS / Math.max(width, 1)));
+	}
+
+	/**
+	 * Creates a new image, filled with 0, with the given number of rows per chunk.
+	 *
+	 * @param width the width of the image
+	 * @param height the height of the image
+	 * @param chunkRows the number of rows of each chunk
+	 *
+	 * */
+	public TiledImage(int width, int height, int chunkRows) {
+
+		check(width, height);
+
+		if(chunkRows <= 0) {
+			throw new IllegalArgumentException("Chunk rows is <= 0");
+		}
+
+		if((long) width * Math.min(chunkRows, Math.max(height, 1)) > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("A chunk of " + chunkRows + " rows does not fit in an array");
+		}
+
+		this.width = width;
+		this.height = height;
+		this.chunkRows = chunkRows;
+		this.offset = 0;
+		this.stride = width;
+
+		chunks = new int[chunkCount(height, chunkRows)][];
+
+		for(int i = 0;i < chunks.length;i++) {
+			chunks[i] = new int[width * Math.min(chunkRows, height - i * chunkRows)];
+		}
+
+	}
+
+	private TiledImage(int[][] chunks, int width, int height, int chunkRows, int offset, int stride) {
+		this.chunks = chunks;
+		this.width = width;
+		this.height = height;
+		this.chunkRows = chunkRows;
+		this.offset = offset;
+		this.stride = stride;
+	}
+
+	public int get(int x, int y) {
+		checkPixel(x, y);
+		return chunks[y / chunkRows][rowOffset(y) + x];
+	}
+
+	public void set(int x, int y, int color) {
+		checkPixel(x, y);
+		chunks[y / chunkRows][rowOffset(y) + x] = color;
+	}
+
+	/**
+	 * Returns the color of a pixel.
+	 *
+	 * @param index the index of the pixel, {@code x + y * width}
+	 *
+	 * @return the color of the pixel
+	 *
+	 * */
+	public int get(long index) {
+		checkIndex(index);
+		return get((int) (index % width), (int) (index / width));
+	}
+
+	/**
+	 * Sets the color of a pixel.
+	 *
+	 * @param index the index of the pixel, {@code x + y * width}
+	 * @param color the new color
+	 *
+	 * */
+	public void set(long index, int color) {
+		checkIndex(index);
+		set((int) (index % width), (int) (index / width), color);
+	}
+
+	/**
+	 * Copies a row of the image into the given array.
+	 *
+	 * @param y the row
+	 * @param dst the destination array
+	 * @param offset the position of dst where the row starts
+	 *
+	 * */
+	public void getRow(int y, int[] dst, int offset) {
+		checkRow(y);
+		System.arraycopy(chunks[y / chunkRows], rowOffset(y), dst, offset, width);
+	}
+
+	/**
+	 * Copies the given array into a row of the image.
+	 *
+	 * @param y the row
+	 * @param src the source array
+	 * @param offset the position of src where the row starts
+	 *
+	 * */
+	public void setRow(int y, int[] src, int offset) {
+		checkRow(y);
+		System.arraycopy(src, offset, chunks[y / chunkRows], rowOffset(y), width);
+	}
+
+	/**
+	 * Returns a chunk of the image. The array is not copied. If this image is a view, it is the whole array image.
+	 *
+	 * @param chunk the index of the chunk
+	 *
+	 * @return the pixels of the chunk
+	 *
+	 * */
+	public int[] getChunk(int chunk) {
+		return chunks[chunk];
+	}
+
+	public int getChunkCount() {
+		return chunks.length;
+	}
+
+	public int getChunkRows() {
+		return chunkRows;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the position of the first pixel in the first chunk, which is only different from 0 in views
+	 * */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return the number of values between the start of two consecutive rows of a chunk, which is the width of the
+	 * image unless it is a view
+	 * */
+	public int getStride() {
+		return stride;
+	}
+
+	/**
+	 * @return the number of pixels of the image, {@code width * height}
+	 * */
+	public long getPixelCount() {
+		return (long) width * height;
+	}
+
+	int[][] chunks() {
+		return chunks;
+	}
+
+	int rowOffset(int y) {
+		return offset + (y % chunkRows) * stride;
+	}
+
+	private void checkPixel(int x, int y) {
+
+		if(x < 0 || x >= width || y < 0 || y >= height) {
+			throw new IndexOutOfBoundsException("Pixel out of the image: " + x + ", " + y);
+		}
+
+	}
+
+	private void checkIndex(long index) {
+
+		if(index < 0 || index >= getPixelCount()) {
+			throw new IndexOutOfBoundsException("Index out of the image: " + index);
+		}
+
+	}
+
+	private void checkRow(int y) {
+
+		if(y < 0 || y >= height) {
+			throw new IndexOutOfBoundsException("Row out of the image: " + y);
+		}
+
+	}
+
+	@Override
+	public String toString() {
+		return "TiledImage [width=" + width + ", height=" + height + ", chunks=" + chunks.length + ", chunkRows=" + chunkRows
+				+ ", offset=" + offset + ", stride=" + stride + "]";
+	}
+
+}
@@ -0,0 +1,547 @@
+package naitsirc98.imagesplitter.cli;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import naitsirc98.imagesplitter.ImageBounds;
+import naitsirc98.imagesplitter.ImageSplitter;
+import naitsirc98.imagesplitter.ImageSplitter.BackgroundType;
+import naitsirc98.imagesplitter.ImageSplitter.SolidColorBackground;
+import naitsirc98.imagesplitter.MappedSplitFile;
+import naitsirc98.imagesplitter.SplitConfig;
+import naitsirc98.imagesplitter.SplitFile;
+import naitsirc98.imagesplitter.SplitWorkspace;
+import naitsirc98.imagesplitter.SplittedImageList;
+
+/**
+ * Command line tool that splits automatically every image of a local directory and writes the bounds of each one
+ * into an output directory.
+ *
+ * <p>Work is done in a pipeline of three stages connected by bounded queues: one thread decodes the images with
+ * {@link ImageIO}, a pool of workers splits them, and one thread writes the descriptors. This way decoding and writing
+ * overlap with the splits, and the queues limit how many decoded images are kept in memory. The throughput of each stage
+ * is printed at the end.</p>
+ *
+ * <pre>
+ * BatchSplitter &lt;input dir&gt; &lt;output dir&gt; [options]
+ *
+ *   --format json|binary        format of the descriptors (json by default)
+ *   --threads n                 number of split workers (available processors by default)
+ *   --queue n                   capacity of the queues between stages (2 * threads by default)
+ *   --background b              transparent, white, black or an ARGB color like 0xFF00FF00
+ *   --particle-size n           maximum size of a particle
+ *   --particle-distance n       maximum distance between a particle and its parent
+ * </pre>
+ *
+ * <p>Binary descriptors are written with {@link SplitFile}, so they can be loaded with {@link MappedSplitFile}.</p>
+ *
+ * <p>Each descriptor is named after its image without the extension, so two images that only differ in the extension
+ * can not be split in the same run. An image that can not be decoded, split or written is reported and counted as failed,
+ * and the rest of the batch goes on.</p>
+ *
+ * */
+public final class BatchSplitter {
+
+	private static final String USAGE = "Usage: BatchSplitter <input dir> <output dir> [--format json|binary] [--threads n] "
+			+ "[--queue n] [--background transparent|white|black|0xAARRGGBB] [--particle-size n] [--particle-distance n]";
+
+	public static void main(String[] args) {
+
+		try {
+			BatchSplitter splitter = parse(args);
+			splitter.run();
+			splitter.printStats(System.out);
+		} catch(IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			System.exit(1);
+		}
+
+	}
+
+	private static BatchSplitter parse(String[] args) {
+
+		if(args.length < 2) {
+			throw new IllegalArgumentException("Missing input or output directory");
+		}
+
+		BatchSplitter splitter = new BatchSplitter(new File(args[0]), new File(args[1]));
+
+		for(int i = 2;i < args.length;i++) {
+
+			final String option = args[i];
+
+			if(i + 1 == args.length) {
+				throw new IllegalArgumentException("Missing value for " + option);
+			}
+
+			final String value = args[++i];
+
+			switch(option) {
+				case "--format":
+					if(!value.equals("json") && !value.equals("binary")) {
+						throw new IllegalArgumentException("Unknown format: " + value);
+					}
+					splitter.binary = value.equals("binary");
+					break;
+				case "--threads":
+					splitter.threads = parsePositive(option, value);
+					break;
+				case "--queue":
+					splitter.queueCapacity = parsePositive(option, value);
+					break;
+				case "--background":
+					splitter.config = splitter.config.withBackground(parseBackground(value));
+					break;
+				case "--particle-size":
+					splitter.config = splitter.config.withParticleSize(parseNonNegative(option, value));
+					break;
+				case "--particle-distance":
+					splitter.config = splitter.config.withParticleDistance(parseNonNegative(option, value));
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option: " + option);
+			}
+
+		}
+
+		return splitter;
+	}
+
+	private static int parsePositive(String option, String value) {
+
+		final int n = parseInt(option, value);
+
+		if(n < 1) {
+			throw new IllegalArgumentException(option + " must be > 0");
+		}
+
+		return n;
+	}
+
+	private static int parseNonNegative(String option, String value) {
+
+		final int n = parseInt(option, value);
+
+		if(n < 0) {
+			throw new IllegalArgumentException(option + " must be >= 0");
+		}
+
+		return n;
+	}
+
+	private static int parseInt(String option, String value) {
+
+		try {
+			return Integer.parseInt(value);
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number for " + option + ": " + value);
+		}
+
+	}
+
+	private static BackgroundType parseBackground(String value) {
+
+		switch(value.toLowerCase(Locale.ROOT)) {
+			case "transparent":
+				return BackgroundType.TRANSPARENT_0x33;
+			case "white":
+				return BackgroundType.WHITE;
+			case "black":
+				return BackgroundType.BLACK;
+		}
+
+		try {
+			final String hex = value.startsWith("0x") || value.startsWith("0X") ? value.substring(2) : value;
+			return new SolidColorBackground((int) Long.parseLong(hex, 16));
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid background: " + value);
+		}
+
+	}
+
+	private final File input;
+	private final File output;
+	private SplitConfig config = SplitConfig.DEFAULT;
+	private boolean binary;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int queueCapacity = -1;
+
+	private final Stage decode = new Stage("decode");
+	private final Stage split = new Stage("split");
+	private final Stage write = new Stage("write");
+	private final AtomicLong failed = new AtomicLong();
+	private long elapsed;
+
+	/**
+	 * Constructs a new BatchSplitter object with the default configuration.
+	 *
+	 * @param input the directory of the images
+	 * @param output the directory of the descriptors
+	 *
+	 * */
+	public BatchSplitter(File input, File output) {
+		this.input = input;
+		this.output = output;
+	}
+
+	/**
+	 * Splits every image of the input directory and waits until all of them are written.
+	 *
+	 * @throws InterruptedException if the current thread is interrupted while waiting
+	 *
+	 * */
+	public void run() throws InterruptedException {
+
+		if(!input.isDirectory()) {
+			throw new IllegalArgumentException("Not a directory: " + input);
+		}
+
+		if(!output.isDirectory() && !output.mkdirs()) {
+			throw new IllegalArgumentException("Cannot create directory: " + output);
+		}
+
+		final File[] files = listImages();
+		final int workers = Math.max(1, threads);
+		final int capacity = queueCapacity > 0 ? queueCapacity : 2 * workers;
+
+		final BlockingQueue<Job> decoded = new ArrayBlockingQueue<>(capacity);
+		final BlockingQueue<Job> splitted = new ArrayBlockingQueue<>(capacity);
+
+		final long start = System.nanoTime();
+
+		List<Thread> pipeline = new ArrayList<>(workers + 2);
+
+		pipeline.add(new Thread(() -> decode(files, decoded, workers), "decoder"));
+
+		for(int i = 0;i < workers;i++) {
+			pipeline.add(new Thread(() -> split(decoded, splitted), "splitter-" + i));
+		}
+
+		pipeline.add(new Thread(() -> write(splitted, workers), "writer"));
+
+		for(Thread thread : pipeline) {
+			thread.start();
+		}
+
+		for(Thread thread : pipeline) {
+			thread.join();
+		}
+
+		elapsed = System.nanoTime() - start;
+	}
+
+	/**
+	 * Prints the throughput of each stage of the last run.
+	 *
+	 * @param out the stream to print to
+	 *
+	 * */
+	public void printStats(PrintStream out) {
+
+		out.printf(Locale.ROOT, "%d images in %.3f s (%d failed)%n", write.images.get(), elapsed / 1e9, failed.get());
+		out.printf(Locale.ROOT, "%-8s %10s %12s %12s %12s%n", "stage", "images", "busy (s)", "images/s", "Mpixels/s");
+
+		for(Stage stage : Arrays.asList(decode, split, write)) {
+
+			final double busy = stage.nanos.get() / 1e9;
+			final double images = stage.images.get();
+			final double pixels = stage.pixels.get() / 1e6;
+
+			out.printf(Locale.ROOT, "%-8s %10d %12.3f %12.1f %12.1f%n", stage.name, stage.images.get(), busy,
+					busy > 0 ? images / busy : 0, busy > 0 ? pixels / busy : 0);
+		}
+
+	}
+
+	private File[] listImages() {
+
+		final List<String> suffixes = Arrays.asList(ImageIO.getReaderFileSuffixes());
+
+		final File[] files = input.listFiles(file -> {
+
+			final String name = file.getName();
+			final int dot = name.lastIndexOf('.');
+
+			return file.isFile() && dot >= 0 && suffixes.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+		});
+
+		if(files == null) {
+			throw new IllegalArgumentException("Cannot list directory: " + input);
+		}
+
+		Arrays.sort(files);
+
+		// Dos imagenes con el mismo nombre sin extension se escribirian en el mismo descriptor
+		final Map<String, File> names = new HashMap<>();
+
+		for(File file : files) {
+
+			final File other = names.putIfAbsent(baseName(file), file);
+
+			if(other != null) {
+				throw new IllegalArgumentException("Both " + other.getName() + " and " + file.getName()
+						+ " would be written to the same descriptor");
+			}
+
+		}
+
+		return files;
+	}
+
+	private void decode(File[] files, BlockingQueue<Job> decoded, int workers) {
+
+		try {
+
+			for(File file : files) {
+
+				final long start = System.nanoTime();
+
+				try {
+
+					BufferedImage image = ImageIO.read(file);
+
+					if(image == null) {
+						throw new IOException("Unsupported image format");
+					}
+
+					final int w = image.getWidth();
+					final int h = image.getHeight();
+
+					Job job = new Job(file, image.getRGB(0, 0, w, h, null, 0, w), w, h);
+
+					decode.add(w, h, System.nanoTime() - start);
+
+					decoded.put(job);
+
+				} catch(IOException | RuntimeException e) {
+					// Los plugins de ImageIO lanzan excepciones no comprobadas con ficheros corruptos
+					fail(file, e);
+				}
+
+			}
+
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			for(int i = 0;i < workers;i++) {
+				putQuietly(decoded, Job.END);
+			}
+		}
+
+	}
+
+	private void split(BlockingQueue<Job> decoded, BlockingQueue<Job> splitted) {
+
+		final SplitWorkspace workspace = SplitWorkspace.get();
+
+		try {
+
+			for(Job job = decoded.take();job != Job.END;job = decoded.take()) {
+
+				final long start = System.nanoTime();
+
+				try {
+					job.sprites = ImageSplitter.split(job.pixels, job.width, job.height, config, workspace);
+					job.hash = binary ? SplitFile.hash(job.pixels, job.width, job.height) : 0;
+				} catch(RuntimeException e) {
+					fail(job.file, e);
+					continue;
+				}
+
+				// Los pixeles ya no hacen falta, que no esperen en la cola
+				job.pixels = null;
+
+				split.add(job.width, job.height, System.nanoTime() - start);
+
+				splitted.put(job);
+			}
+
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			putQuietly(splitted, Job.END);
+		}
+
+	}
+
+	private void write(BlockingQueue<Job> splitted, int workers) {
+
+		try {
+
+			for(int remaining = workers;remaining > 0;) {
+
+				final Job job = splitted.take();
+
+				if(job == Job.END) {
+					remaining--;
+					continue;
+				}
+
+				final long start = System.nanoTime();
+
+				try {
+
+					if(binary) {
+						writeBinary(job);
+					} else {
+						writeJson(job);
+					}
+
+					write.add(job.width, job.height, System.nanoTime() - start);
+
+				} catch(IOException | RuntimeException e) {
+					// Si el escritor termina, los workers se quedan bloqueados en la cola
+					fail(job.file, e);
+				}
+
+			}
+
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+	}
+
+	private void writeJson(Job job) throws IOException {
+
+		final File file = new File(output, baseName(job.file) + ".json");
+
+		try(Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+
+			out.write("{\"image\":\"" + escape(job.file.getName()) + "\",\"width\":" + job.width
+					+ ",\"height\":" + job.height + ",\"sprites\":[");
+
+			for(int i = 0;i < job.sprites.size();i++) {
+
+				final ImageBounds b = job.sprites.get(i);
+
+				if(i > 0) {
+					out.write(',');
+				}
+
+				out.write("\n{\"x\":" + b.getX() + ",\"y\":" + b.getY() + ",\"width\":" + b.getWidth()
+						+ ",\"height\":" + b.getHeight() + ",\"row\":" + b.getRow() + ",\"column\":" + b.getColumn() + "}");
+			}
+
+			out.write("\n]}\n");
+		}
+
+	}
+
+	private void writeBinary(Job job) throws IOException {
+		SplitFile.write(job.sprites, job.hash, new File(output, baseName(job.file) + ".bin").toPath());
+	}
+
+	private void fail(File file, Exception e) {
+		failed.incrementAndGet();
+		System.err.println(file + ": " + (e.getMessage() != null ? e.getMessage() : e));
+	}
+
+	private static void putQuietly(BlockingQueue<Job> queue, Job job) {
+
+		boolean interrupted = false;
+
+		while(true) {
+			try {
+				queue.put(job);
+				break;
+			} catch(InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+	}
+
+	private static String baseName(File file) {
+
+		final String name = file.getName();
+		final int dot = name.lastIndexOf('.');
+
+		return dot > 0 ? name.substring(0, dot) : name;
+	}
+
+	private static String escape(String s) {
+
+		StringBuilder builder = new StringBuilder(s.length());
+
+		for(int i = 0;i < s.length();i++) {
+
+			final char c = s.charAt(i);
+
+			if(c == '"' || c == '\\') {
+				builder.append('\\').append(c);
+			} else if(c < 0x20) {
+				builder.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+			} else {
+				builder.append(c);
+			}
+
+		}
+
+		return builder.toString();
+	}
+
+	private static final class Job {
+
+		static final Job END = new Job(null, null, 0, 0);
+
+		final File file;
+		final int width;
+		final int height;
+		int[] pixels;
+		SplittedImageList sprites;
+		long hash;
+
+		Job(File file, int[] pixels, int width, int height) {
+			this.file = file;
+			this.pixels = pixels;
+			this.width = width;
+			this.height = height;
+		}
+
+	}
+
+	private static final class Stage {
+
+		final String name;
+		final AtomicLong images = new AtomicLong();
+		final AtomicLong pixels = new AtomicLong();
+		final AtomicLong nanos = new AtomicLong();
+
+		Stage(String name) {
+			this.name = name;
+		}
+
+		void add(int width, int height, long time) {
+			images.incrementAndGet();
+			pixels.addAndGet((long) width * height);
+			nanos.addAndGet(time);
+		}
+
+	}
+
+}